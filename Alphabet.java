@@ -1,5 +1,9 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Naman Patel
@@ -11,8 +15,43 @@ class Alphabet {
      */
     Alphabet(String chars) {
         _chars = chars;
-        String[] stringArray = chars.split("");
         charArray = _chars.toCharArray();
+        char lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+        for (char ch : charArray) {
+            lo = (char) Math.min(lo, ch);
+            hi = (char) Math.max(hi, ch);
+        }
+        int span = charArray.length == 0 ? 0 : hi - lo + 1;
+        if (span <= Math.max(DENSE_SPAN, DENSE_FACTOR * charArray.length)) {
+            _base = lo;
+            _dense = new int[span];
+            Arrays.fill(_dense, -1);
+            _keys = null;
+            _values = null;
+            for (int i = 0; i < charArray.length; i += 1) {
+                if (_dense[charArray[i] - lo] >= 0) {
+                    throw error("duplicate character %c in alphabet",
+                                charArray[i]);
+                }
+                _dense[charArray[i] - lo] = i;
+            }
+        } else {
+            _base = 0;
+            _dense = null;
+            int capacity = Integer.highestOneBit(charArray.length * 2 - 1) * 2;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+            for (int i = 0; i < charArray.length; i += 1) {
+                int slot = slot(charArray[i]);
+                if (_values[slot] >= 0) {
+                    throw error("duplicate character %c in alphabet",
+                                charArray[i]);
+                }
+                _keys[slot] = charArray[i];
+                _values[slot] = i;
+            }
+        }
     }
 
     /**
@@ -26,14 +65,14 @@ class Alphabet {
      * Returns the size of the alphabet.
      */
     int size() {
-        return _chars.length();
+        return charArray.length;
     }
 
     /**
      * Returns true if CH is in this alphabet.
      */
     boolean contains(char ch) {
-        return _chars.contains(String.valueOf(ch));
+        return indexOf(ch) >= 0;
     }
 
     /**
@@ -51,18 +90,62 @@ class Alphabet {
     /** Returns the index of character CH, which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < _chars.length(); i++) {
-            if (ch == _chars.charAt(i)) {
-                return i;
+        int index = indexOf(ch);
+        if (index < 0) {
+            throw new EnigmaException("character not found");
+        }
+        return index;
+    }
+
+    /** Returns the index of CH in this alphabet, or -1 if it is not
+     *  present. */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            int k = ch - _base;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        }
+        return _values[slot(ch)];
+    }
+
+    /** Returns the slot of the open-addressed table holding CH, or the
+     *  empty slot where CH would be placed. */
+    private int slot(char ch) {
+        int mask = _keys.length - 1;
+        int h = (ch * 0x9E3779B1) >>> 16;
+        while (true) {
+            h &= mask;
+            if (_values[h] < 0 || _keys[h] == ch) {
+                return h;
             }
+            h += 1;
         }
-        throw new EnigmaException("character not found");
     }
 
+    /** Alphabets whose characters span at most this many code units
+     *  are always indexed by a dense table. */
+    private static final int DENSE_SPAN = 1024;
+
+    /** Alphabets whose characters span at most this many code units
+     *  per character are also indexed by a dense table. */
+    private static final int DENSE_FACTOR = 8;
+
     /** String of characters in my alphabet. */
     private final String _chars;
 
     /** Char array of characters in my alphabet. */
     protected char[] charArray;
 
+    /** Smallest character of a densely indexed alphabet. */
+    private final char _base;
+
+    /** Index of character _base + K at K, or -1 if absent; null when
+     *  the alphabet is too sparse for a dense table. */
+    private final int[] _dense;
+
+    /** Characters of an open-addressed index of a sparse alphabet. */
+    private final char[] _keys;
+
+    /** Indices of the characters in _keys, or -1 for empty slots. */
+    private final int[] _values;
+
 }
@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Naman Patel
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Characters spread over the whole range of char, so widely that
+     *  they are indexed by the hashed table rather than the dense one. */
+    private static final String SPARSE;
+    static {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 300; i += 1) {
+            chars.append((char) (0x21 + i * 211));
+        }
+        chars.append('\uffff');
+        SPARSE = chars.toString();
+    }
+
+    /** Check that ALPHA holds exactly the characters of CHARS, in
+     *  order. */
+    private void checkAlphabet(Alphabet alpha, String chars) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char ch = chars.charAt(i);
+            assertTrue(msg("contains", "character %d", i),
+                       alpha.contains(ch));
+            assertEquals(msg("toInt", "character %d", i), i,
+                         alpha.toInt(ch));
+            assertEquals(msg("toChar", "index %d", i), ch, alpha.toChar(i));
+        }
+    }
+
+    /** Check that making an alphabet of CHARS fails. */
+    private void checkRejected(String chars) {
+        try {
+            new Alphabet(chars);
+            fail("duplicate character accepted in " + chars.length()
+                 + " characters");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("duplicate character"));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDense() {
+        checkAlphabet(UPPER, UPPER_STRING);
+        assertFalse(UPPER.contains('a'));
+        assertFalse(UPPER.contains('@'));
+        assertFalse(UPPER.contains('['));
+        assertFalse(UPPER.contains('\u0000'));
+        assertFalse(UPPER.contains('\uffff'));
+    }
+
+    @Test
+    public void checkSparse() {
+        checkAlphabet(new Alphabet(SPARSE), SPARSE);
+        checkAlphabet(new Alphabet("A\uffff"), "A\uffff");
+    }
+
+    @Test
+    public void checkSparseAbsent() {
+        Alphabet alpha = new Alphabet(SPARSE);
+        int absent = 0;
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch += 1) {
+            if (SPARSE.indexOf(ch) < 0) {
+                assertFalse(msg("contains", "absent character %d", ch),
+                            alpha.contains((char) ch));
+                absent += 1;
+            }
+        }
+        assertEquals(Character.MAX_VALUE + 1 - SPARSE.length(), absent);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSparseToIntAbsent() {
+        new Alphabet(SPARSE).toInt('"');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkToCharOutOfRange() {
+        new Alphabet(SPARSE).toChar(SPARSE.length());
+    }
+
+    @Test
+    public void checkDuplicatesRejected() {
+        checkRejected("ABCA");
+        checkRejected(SPARSE + SPARSE.charAt(150));
+        checkRejected("\u0000\uffff\u0000");
+    }
+
+}
@@ -0,0 +1,178 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** How far a run of Main has converted its input, recorded so that an
+ *  interrupted run can be resumed.  A checkpoint is taken just after a
+ *  message line has been written, and records the byte offset of the
+ *  next line of input, the number of bytes of output written, the
+ *  settings line of the current settings group and the settings of the
+ *  rotors in slots 1 and up.  Resuming applies the settings line, sets
+ *  the rotors, truncates the output to its recorded length and
+ *  continues reading at the recorded offset, so that the output is the
+ *  same as that of an uninterrupted run.
+ *
+ *  A checkpoint file is replaced atomically, so it always holds a
+ *  complete checkpoint, and carries a checksum of its contents.
+ *  @author Naman Patel
+ */
+final class Checkpoint {
+
+    /** A checkpoint at byte INPUTOFFSET of the input and byte
+     *  OUTPUTOFFSET of the output, in the settings group with settings
+     *  line SETTINGS, with the rotors in slots 1 and up at
+     *  ROTORSETTINGS. */
+    Checkpoint(long inputOffset, long outputOffset, String settings,
+               int[] rotorSettings) {
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _settings = settings;
+        _rotorSettings = rotorSettings.clone();
+    }
+
+    /** Return a checkpoint of M, which is converting the settings group
+     *  with settings line SETTINGS, after INPUTOFFSET bytes of input and
+     *  OUTPUTOFFSET bytes of output. */
+    static Checkpoint of(Machine M, String settings, long inputOffset,
+                         long outputOffset) {
+        int[] rotorSettings = new int[M.numRotors() - 1];
+        for (int i = 1; i < M.numRotors(); i += 1) {
+            rotorSettings[i - 1] = M.rotor(i).setting();
+        }
+        return new Checkpoint(inputOffset, outputOffset, settings,
+                              rotorSettings);
+    }
+
+    /** Return the checkpoint in FILE, or null if there is no such
+     *  file. */
+    static Checkpoint read(Path file) {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+        if (bytes.limit() < 2 * Integer.BYTES + Long.BYTES) {
+            throw error("bad checkpoint %s", file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, bytes.limit() - Long.BYTES);
+        if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION
+            || bytes.getLong(bytes.limit() - Long.BYTES) != crc.getValue()) {
+            throw error("bad checkpoint %s", file);
+        }
+        try {
+            long inputOffset = bytes.getLong(), outputOffset = bytes.getLong();
+            char[] settings = new char[bytes.getInt()];
+            for (int i = 0; i < settings.length; i += 1) {
+                settings[i] = bytes.getChar();
+            }
+            int[] rotorSettings = new int[bytes.getInt()];
+            for (int i = 0; i < rotorSettings.length; i += 1) {
+                rotorSettings[i] = bytes.getInt();
+            }
+            return new Checkpoint(inputOffset, outputOffset,
+                                  new String(settings), rotorSettings);
+        } catch (BufferUnderflowException | NegativeArraySizeException excp) {
+            throw error("bad checkpoint %s", file);
+        }
+    }
+
+    /** Replace FILE atomically with one holding this checkpoint. */
+    void write(Path file) {
+        ByteBuffer bytes =
+            ByteBuffer.allocate(2 * Integer.BYTES + 3 * Long.BYTES
+                                + Integer.BYTES + 2 * _settings.length()
+                                + Integer.BYTES
+                                + Integer.BYTES * _rotorSettings.length);
+        bytes.putInt(MAGIC).putInt(VERSION);
+        bytes.putLong(_inputOffset).putLong(_outputOffset);
+        bytes.putInt(_settings.length());
+        for (int i = 0; i < _settings.length(); i += 1) {
+            bytes.putChar(_settings.charAt(i));
+        }
+        bytes.putInt(_rotorSettings.length);
+        for (int setting : _rotorSettings) {
+            bytes.putInt(setting);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, bytes.position());
+        bytes.putLong(crc.getValue());
+        bytes.flip();
+        Path temp = null;
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, ".enigma", ".tmp");
+            try (FileChannel channel =
+                     FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s: %s", file,
+                        excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    throw error("could not remove %s", temp);
+                }
+            }
+        }
+    }
+
+    /** Return the byte offset of the next line of input. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the number of bytes of output written. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return the settings line of the current settings group. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the settings of the rotors in slots 1 and up. */
+    int[] rotorSettings() {
+        return _rotorSettings.clone();
+    }
+
+    /** Marks a checkpoint file ("ENGC"). */
+    private static final int MAGIC = 0x454e4743;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Byte offset of the next line of input. */
+    private final long _inputOffset;
+
+    /** Number of bytes of output written. */
+    private final long _outputOffset;
+
+    /** Settings line of the current settings group. */
+    private final String _settings;
+
+    /** Settings of the rotors in slots 1 and up. */
+    private final int[] _rotorSettings;
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Naman Patel
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a naval machine with five slots and three pawls, with no
+     *  rotors inserted. */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "I", "III", "IV");
+    }
+
+    /** Settings line of the machines tested. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Set M up according to SETTINGS. */
+    private void setUp(Machine M) {
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkResumedConversion() throws IOException {
+        String text = "FROMHISSHOULDERHIAWATHA";
+        Machine M = machine();
+        setUp(M);
+        String expected = M.convert(text);
+        setUp(M);
+        String converted = M.convert(text.substring(0, 10));
+        Path file = Files.createTempFile("enigma", ".checkpoint");
+        try {
+            Checkpoint.of(M, SETTINGS, 1234, 5678L << 32).write(file);
+            Checkpoint resumed = Checkpoint.read(file);
+            assertEquals(1234, resumed.inputOffset());
+            assertEquals(5678L << 32, resumed.outputOffset());
+            assertEquals(SETTINGS, resumed.settings());
+            Machine other = machine();
+            setUp(other);
+            other.setRotors(resumed.rotorSettings());
+            assertEquals(expected,
+                         converted + other.convert(text.substring(10)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void checkMissingAndDamaged() throws IOException {
+        Path file = Files.createTempFile("enigma", ".checkpoint");
+        try {
+            new Checkpoint(1, 2, SETTINGS, new int[] { 0, 1, 2, 3 })
+                .write(file);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(file, bytes);
+            try {
+                Checkpoint.read(file);
+                fail("damaged checkpoint read");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("bad checkpoint"));
+            }
+            Files.delete(file);
+            assertNull(Checkpoint.read(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
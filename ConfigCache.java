@@ -0,0 +1,230 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/** Compiled machine configurations stored in a binary file, so that a
+ *  configuration need only be parsed once.  A cache file records the
+ *  alphabet, the number of rotor slots and pawls, and each available
+ *  rotor's type, name, notches and permutation table, together with the
+ *  size, modification time and checksum of the configuration file it
+ *  was compiled from, and ends with a checksum of its own contents.  A
+ *  cache file that is damaged, or that does not match its configuration
+ *  file, is ignored.
+ *  @author Naman Patel
+ */
+class ConfigCache {
+
+    /** Return the machine compiled into the cache file CACHE if that was
+     *  compiled from the current contents of the configuration file
+     *  CONFIG, and otherwise null. */
+    static Machine load(Path config, Path cache) {
+        return load(config, cache, null);
+    }
+
+    /** Return the machine compiled into the cache file CACHE if that was
+     *  compiled from the current contents of the configuration file
+     *  CONFIG, and otherwise null.  Its rotors take their conversion
+     *  tables from TABLES, if it is not null; none is taken unless the
+     *  whole cache file is valid. */
+    static Machine load(Path config, Path cache, OffHeapTable.Source tables) {
+        Alphabet alphabet;
+        int numRotors, numPawls;
+        byte[] types;
+        String[] names, notches;
+        Permutation[] perms;
+        try (FileChannel channel = FileChannel.open(cache,
+                                                    StandardOpenOption.READ)) {
+            MappedByteBuffer bytes =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (bytes.limit() < Long.BYTES) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate().limit(bytes.limit() - Long.BYTES));
+            if (bytes.getLong(bytes.limit() - Long.BYTES) != crc.getValue()) {
+                return null;
+            }
+            bytes.limit(bytes.limit() - Long.BYTES);
+            if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION
+                || bytes.getLong() != Files.size(config)
+                || bytes.getLong() != modified(config)
+                || bytes.getLong() != checksum(config)) {
+                return null;
+            }
+            alphabet = new Alphabet(getString(bytes));
+            numRotors = bytes.getInt();
+            numPawls = bytes.getInt();
+            int count = bytes.getInt();
+            types = new byte[count];
+            names = new String[count];
+            notches = new String[count];
+            perms = new Permutation[count];
+            int[] table = new int[alphabet.size()];
+            for (int i = 0; i < count; i += 1) {
+                types[i] = bytes.get();
+                names[i] = getString(bytes);
+                notches[i] = getString(bytes);
+                bytes.asIntBuffer().get(table);
+                bytes.position(bytes.position() + 4 * table.length);
+                perms[i] = new Permutation(table, alphabet);
+            }
+            if (bytes.hasRemaining()) {
+                return null;
+            }
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+        ArrayList<Rotor> allRotors = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i += 1) {
+            if (types[i] == MOVING) {
+                allRotors.add(new MovingRotor(names[i], perms[i], notches[i],
+                                              tables));
+            } else if (types[i] == REFLECTOR) {
+                allRotors.add(new Reflector(names[i], perms[i], tables));
+            } else {
+                allRotors.add(new FixedRotor(names[i], perms[i], tables));
+            }
+        }
+        return new Machine(alphabet, numRotors, numPawls, allRotors);
+    }
+
+    /** Compile M, which was read from the configuration file CONFIG, into
+     *  the cache file CACHE, replacing it atomically.  As the cache is
+     *  only an optimization, failure to write it is ignored. */
+    static void save(Machine M, Path config, Path cache) {
+        Path temp = null;
+        try {
+            Alphabet alphabet = M.alphabet();
+            int size = alphabet.size();
+            ByteBuffer bytes = ByteBuffer.allocate(INITIAL_SIZE);
+            bytes = putInts(bytes, MAGIC, VERSION);
+            bytes = putLongs(bytes, Files.size(config), modified(config),
+                             checksum(config));
+            bytes = putString(bytes, new String(alphabet.charArray));
+            bytes = putInts(bytes, M.numRotors(), M.numPawls(),
+                            M._allRotors.size());
+            int[] table = new int[size];
+            for (Rotor rotor : M._allRotors) {
+                byte type = rotor.rotates() ? MOVING
+                    : rotor.reflecting() ? REFLECTOR : FIXED;
+                bytes = ensure(bytes, 1);
+                bytes.put(type);
+                bytes = putString(bytes, rotor.name());
+                bytes = putString(bytes, rotor instanceof MovingRotor
+                                  ? ((MovingRotor) rotor).getnotches() : "");
+                for (int k = 0; k < size; k += 1) {
+                    table[k] = rotor.permutation().permute(k);
+                }
+                bytes = putInts(bytes, table);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.array(), 0, bytes.position());
+            bytes = putLongs(bytes, crc.getValue());
+            bytes.flip();
+            Path dir = cache.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, ".enigma", ".tmp");
+            try (FileChannel channel =
+                     FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException excp) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Return the modification time of FILE in milliseconds. */
+    private static long modified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /** Return the CRC-32 checksum of the contents of FILE. */
+    private static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        return crc.getValue();
+    }
+
+    /** Return a string read from BYTES as a length followed by that many
+     *  chars. */
+    private static String getString(ByteBuffer bytes) {
+        char[] chars = new char[bytes.getInt()];
+        bytes.asCharBuffer().get(chars);
+        bytes.position(bytes.position() + 2 * chars.length);
+        return new String(chars);
+    }
+
+    /** Return BYTES, or a larger copy of it, with room for N more
+     *  bytes. */
+    private static ByteBuffer ensure(ByteBuffer bytes, int n) {
+        if (bytes.remaining() >= n) {
+            return bytes;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(
+            Math.max(2 * bytes.capacity(), bytes.position() + n));
+        bytes.flip();
+        return larger.put(bytes);
+    }
+
+    /** Append S to BYTES as a length followed by its chars, returning
+     *  the buffer now holding the data. */
+    private static ByteBuffer putString(ByteBuffer bytes, String s) {
+        bytes = ensure(bytes, 4 + 2 * s.length());
+        bytes.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            bytes.putChar(s.charAt(i));
+        }
+        return bytes;
+    }
+
+    /** Append VALUES to BYTES, returning the buffer now holding the
+     *  data. */
+    private static ByteBuffer putInts(ByteBuffer bytes, int... values) {
+        bytes = ensure(bytes, 4 * values.length);
+        for (int value : values) {
+            bytes.putInt(value);
+        }
+        return bytes;
+    }
+
+    /** Append VALUES to BYTES, returning the buffer now holding the
+     *  data. */
+    private static ByteBuffer putLongs(ByteBuffer bytes, long... values) {
+        bytes = ensure(bytes, 8 * values.length);
+        for (long value : values) {
+            bytes.putLong(value);
+        }
+        return bytes;
+    }
+
+    /** Marks a cache file ("ENGM"). */
+    private static final int MAGIC = 0x454e474d;
+
+    /** Version of the cache file format. */
+    private static final int VERSION = 2;
+
+    /** Rotor type codes. */
+    private static final byte MOVING = 'M', FIXED = 'N', REFLECTOR = 'R';
+
+    /** Initial size of the buffer holding a cache file being written. */
+    private static final int INITIAL_SIZE = 4096;
+
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Naman Patel
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The rotors of the machines cached. */
+    private static final String[] ROTORS = {
+        "B", "C", "Beta", "Gamma", "I", "II", "III", "IV", "V", "VI"
+    };
+
+    /** Rotors inserted by the settings line of the machines cached. */
+    private static final String[] INSERTED = { "C", "Gamma", "VI", "II", "V" };
+
+    /** Text converted by the machines cached. */
+    private static final String TEXT = "FROMHISSHOULDERHIAWATHA";
+
+    /** Return the conversion of TEXT by M, set up with INSERTED. */
+    private String convert(Machine M) {
+        M.insertRotors(INSERTED);
+        M.setRotors("QZMA");
+        M.setPlugboard(new Permutation("(AQ) (ZB)", UPPER));
+        return M.convert(TEXT);
+    }
+
+    /** Check that CACHE holds a machine that converts as the one
+     *  configured by CONFIG. */
+    private void checkCached(Path config, Path cache) {
+        Machine cached = ConfigCache.load(config, cache);
+        assertNotNull("cache not loaded", cached);
+        Machine original = navalMachine(5, 3, ROTORS);
+        assertEquals(original.numRotors(), cached.numRotors());
+        assertEquals(original.numPawls(), cached.numPawls());
+        assertEquals(original._allRotors.size(), cached._allRotors.size());
+        assertEquals(convert(original), convert(cached));
+    }
+
+    /** Return the bytes of FILE, with the checksum at their end, which
+     *  covers all the others, recomputed. */
+    private byte[] resummed(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        ByteBuffer.wrap(bytes).putLong(bytes.length - Long.BYTES,
+                                       crc.getValue());
+        return bytes;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Path config = tempFile(".conf", navalConfig(5, 3, ROTORS));
+        Path cache = Files.createTempFile("enigma", ".cache");
+        try {
+            Files.delete(cache);
+            assertNull(ConfigCache.load(config, cache));
+            ConfigCache.save(navalMachine(5, 3, ROTORS), config, cache);
+            checkCached(config, cache);
+            checkCached(config, cache);
+        } finally {
+            Files.delete(config);
+            Files.deleteIfExists(cache);
+        }
+    }
+
+    @Test
+    public void checkStale() throws IOException {
+        String text = navalConfig(5, 3, ROTORS);
+        Path config = tempFile(".conf", text);
+        Path cache = Files.createTempFile("enigma", ".cache");
+        try {
+            ConfigCache.save(navalMachine(5, 3, ROTORS), config, cache);
+            checkCached(config, cache);
+            FileTime written = Files.getLastModifiedTime(config);
+
+            Files.write(config, text.replace("(AE) (BN)", "(AN) (BE)")
+                        .getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(config, written);
+            assertEquals(text.length(), Files.size(config));
+            assertNull("same size and time, changed contents",
+                       ConfigCache.load(config, cache));
+
+            Files.write(config, text.getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(config, written);
+            checkCached(config, cache);
+
+            Files.setLastModifiedTime(config,
+                                      FileTime.fromMillis(written.toMillis()
+                                                          + 1000));
+            assertNull("changed time", ConfigCache.load(config, cache));
+            Files.setLastModifiedTime(config, written);
+
+            Files.write(config, (text + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(config, written);
+            assertNull("changed size", ConfigCache.load(config, cache));
+        } finally {
+            Files.delete(config);
+            Files.delete(cache);
+        }
+    }
+
+    @Test
+    public void checkDamaged() throws IOException {
+        Path config = tempFile(".conf", navalConfig(5, 3, ROTORS));
+        Path cache = Files.createTempFile("enigma", ".cache");
+        try {
+            ConfigCache.save(navalMachine(5, 3, ROTORS), config, cache);
+            byte[] bytes = Files.readAllBytes(cache);
+            for (int k = 0; k < bytes.length; k += 1) {
+                byte[] damaged = bytes.clone();
+                damaged[k] ^= 1 << (k % 8);
+                Files.write(cache, damaged);
+                assertNull(msg("damaged", "byte %d", k),
+                           ConfigCache.load(config, cache));
+            }
+            for (int n = 0; n < bytes.length; n += 1 + n / 16) {
+                Files.write(cache, Arrays.copyOf(bytes, n));
+                assertNull(msg("truncated", "%d bytes", n),
+                           ConfigCache.load(config, cache));
+            }
+            Files.write(cache, Arrays.copyOf(bytes, bytes.length + 8));
+            assertNull("extended", ConfigCache.load(config, cache));
+            Files.write(cache, bytes);
+            checkCached(config, cache);
+        } finally {
+            Files.delete(config);
+            Files.delete(cache);
+        }
+    }
+
+    @Test
+    public void checkVersionMismatch() throws IOException {
+        Path config = tempFile(".conf", navalConfig(5, 3, ROTORS));
+        Path cache = Files.createTempFile("enigma", ".cache");
+        try {
+            ConfigCache.save(navalMachine(5, 3, ROTORS), config, cache);
+            byte[] bytes = Files.readAllBytes(cache);
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            int magic = header.getInt(0), version = header.getInt(4);
+            for (int other : new int[] { version - 1, version + 1, -1 }) {
+                header.putInt(4, other);
+                Files.write(cache, resummed(bytes));
+                assertNull(msg("version", "%d", other),
+                           ConfigCache.load(config, cache));
+            }
+            header.putInt(4, version);
+            header.putInt(0, magic ^ 0x20);
+            Files.write(cache, resummed(bytes));
+            assertNull("magic", ConfigCache.load(config, cache));
+            header.putInt(0, magic);
+            Files.write(cache, resummed(bytes));
+            checkCached(config, cache);
+        } finally {
+            Files.delete(config);
+            Files.delete(cache);
+        }
+    }
+
+}
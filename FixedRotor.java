@@ -7,22 +7,26 @@ import static enigma.EnigmaException.*;
  */
 class FixedRotor extends Rotor {
 
-
-
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is given by PERM. */
     FixedRotor(String name, Permutation perm) {
-        super(name, perm);
-        _name = name;
-        _permutation = perm;
-        _setting = 0;
+        this(name, perm, null);
     }
-    /** Common alphabet of my rotors. */
-    private Permutation _permutation;
 
-    /** My current setting. */
-    private int _setting;
+    /** A non-moving rotor named NAME whose permutation at the 0 setting
+     *  is given by PERM, with its conversion tables from TABLES (see
+     *  Rotor). */
+    FixedRotor(String name, Permutation perm, OffHeapTable.Source tables) {
+        super(name, perm, tables);
+    }
 
-    /** My name. */
-    private String _name;
+    /** A copy of ROTOR at the 0 setting (see Rotor.copy). */
+    FixedRotor(FixedRotor rotor) {
+        super(rotor);
+    }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
 }
@@ -0,0 +1,488 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the rotors and settings under which a machine decrypts a
+ *  ciphertext into the most plausible plaintext.  The search tries every
+ *  ordering of the available rotors that fills the machine's slots (a
+ *  reflector in slot 0, non-moving rotors in the slots before the last
+ *  numPawls(), and moving rotors in those), and every setting of the
+ *  inserted rotors, with a given plugboard.  It scores each decryption
+ *  with a Scorer and keeps the best.
+ *
+ *  The key space is divided into units, each one rotor ordering with one
+ *  setting of the leftmost rotor, which are converted by the tasks of a
+ *  fork-join pool.  Each task uses one machine and reuses its buffers
+ *  for every candidate, so that the search allocates little beyond the
+ *  results.  A candidate is rejected after decrypting only its first
+ *  prefix characters if their score is more than the scorer's margin
+ *  below the lowest score among the best results found so far by any
+ *  task.
+ *  @author Naman Patel
+ */
+class KeySearch {
+
+    /** A search of the rotors and settings of copies of TEMPLATE, which
+     *  has the available rotors, with plugboard PLUGBOARD, for the
+     *  RESULTS best decryptions according to SCORER.  Candidates are
+     *  first scored on PREFIX characters. */
+    KeySearch(Machine template, Permutation plugboard, Scorer scorer,
+              int results, int prefix) {
+        if (results < 1 || prefix < 1) {
+            throw error("bad search limits");
+        }
+        _template = template;
+        _plugboard = plugboard;
+        _scorer = scorer;
+        _results = results;
+        _prefix = prefix;
+        _orders = rotorOrders(template);
+        _size = template.alphabet().size();
+        if (_orders.isEmpty()) {
+            throw error("no rotor order fills the machine");
+        }
+    }
+
+    /** Return the best decryptions of CIPHERTEXT, whose characters must
+     *  be in my alphabet, found by searching on POOL, best first. */
+    List<Candidate> search(String ciphertext, ForkJoinPool pool) {
+        Alphabet alphabet = _template.alphabet();
+        int[] text = new int[ciphertext.length()];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = alphabet.toInt(ciphertext.charAt(i));
+        }
+        if (text.length == 0) {
+            throw error("nothing to search for");
+        }
+        AtomicLong floor = new AtomicLong(
+            Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+        PriorityQueue<Candidate> best = pool.invoke(
+            new SearchTask(text, floor, 0, (long) _orders.size() * _size));
+        ArrayList<Candidate> result = new ArrayList<>(best);
+        result.sort(null);
+        return result;
+    }
+
+    /** Return all the orders of the rotors available to TEMPLATE that
+     *  fill its slots, as lists of rotor names. */
+    private static List<String[]> rotorOrders(Machine template) {
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor rotor : template._allRotors) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        int slots = template.numRotors(), pawls = template.numPawls();
+        ArrayList<String[]> result = new ArrayList<>();
+        String[] order = new String[slots];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(result, order, 1, slots - pawls, fixed, moving);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER, whose slots before K are
+     *  filled, with distinct rotors: those from FIXED in slots K up to
+     *  FIRSTMOVING and those from MOVING after that. */
+    private static void addOrders(List<String[]> result, String[] order,
+                                  int k, int firstMoving,
+                                  List<String> fixed, List<String> moving) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = k < firstMoving ? fixed : moving;
+        for (String name : choices) {
+            if (!Arrays.asList(order).subList(1, k).contains(name)) {
+                order[k] = name;
+                addOrders(result, order, k + 1, firstMoving, fixed, moving);
+            }
+        }
+        order[k] = null;
+    }
+
+    /** A scoring function for candidate plaintexts, in which greater
+     *  scores are more plausible.  Scores are per character, so that
+     *  those of texts of different lengths can be compared. */
+    interface Scorer {
+        /** Return the score of the character indices TEXT[0 .. LEN-1]. */
+        double score(int[] text, int len);
+
+        /** Return how far the score of a prefix of a plausible text may
+         *  fall below that of the whole text. */
+        double margin();
+
+        /** Return a scorer like me that may be used independently of me,
+         *  in another thread. */
+        Scorer copy();
+    }
+
+    /** A scorer for texts in an alphabet of SIZE characters by their
+     *  index of coincidence: the probability that two characters drawn
+     *  from the text at random are the same. */
+    static Scorer indexOfCoincidence(int size) {
+        return new IndexOfCoincidence(size);
+    }
+
+    /** A scorer for texts in ALPHABET by the mean base-10 logarithm of
+     *  the frequency of each of their N-character sequences in SAMPLE.
+     *  Characters of SAMPLE not in ALPHABET are ignored. */
+    static Scorer ngrams(Alphabet alphabet, String sample, int n) {
+        return new NGrams(alphabet, sample, n);
+    }
+
+    /** Scores texts by their index of coincidence. */
+    private static final class IndexOfCoincidence implements Scorer {
+        /** A scorer for an alphabet of SIZE characters. */
+        IndexOfCoincidence(int size) {
+            _counts = new int[size];
+        }
+
+        @Override
+        public double score(int[] text, int len) {
+            Arrays.fill(_counts, 0);
+            for (int i = 0; i < len; i += 1) {
+                _counts[text[i]] += 1;
+            }
+            long pairs = 0;
+            for (int count : _counts) {
+                pairs += (long) count * (count - 1);
+            }
+            return len < 2 ? 0 : (double) pairs / ((long) len * (len - 1));
+        }
+
+        @Override
+        public double margin() {
+            return IOC_MARGIN;
+        }
+
+        @Override
+        public Scorer copy() {
+            return new IndexOfCoincidence(_counts.length);
+        }
+
+        /** Number of occurrences of each character in the text being
+         *  scored. */
+        private final int[] _counts;
+    }
+
+    /** Scores texts by the frequencies of their N-grams in a sample. */
+    private static final class NGrams implements Scorer {
+        /** A scorer for texts in ALPHABET by their N-grams in SAMPLE. */
+        NGrams(Alphabet alphabet, String sample, int n) {
+            long entries = 1;
+            for (int i = 0; i < n && entries <= MAX_NGRAMS; i += 1) {
+                entries *= alphabet.size();
+            }
+            if (n < 1 || entries > MAX_NGRAMS) {
+                throw error("bad n-gram length %d", n);
+            }
+            _n = n;
+            _size = alphabet.size();
+            _logFrequencies = new double[(int) entries];
+            long total = 0;
+            int key = 0, run = 0, modulus = (int) (entries / _size);
+            int[] counts = new int[(int) entries];
+            for (int i = 0; i < sample.length(); i += 1) {
+                char ch = sample.charAt(i);
+                if (!alphabet.contains(ch)) {
+                    continue;
+                }
+                key = (key % modulus) * _size + alphabet.toInt(ch);
+                run += 1;
+                if (run >= n) {
+                    counts[key] += 1;
+                    total += 1;
+                }
+            }
+            if (total == 0) {
+                throw error("n-gram sample too short");
+            }
+            double unseen = Math.log10(UNSEEN_COUNT / total);
+            for (int i = 0; i < counts.length; i += 1) {
+                _logFrequencies[i] = counts[i] == 0 ? unseen
+                    : Math.log10((double) counts[i] / total);
+            }
+        }
+
+        /** A scorer sharing the table of SCORER. */
+        NGrams(NGrams scorer) {
+            _n = scorer._n;
+            _size = scorer._size;
+            _logFrequencies = scorer._logFrequencies;
+        }
+
+        @Override
+        public double score(int[] text, int len) {
+            if (len < _n) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            int modulus = _logFrequencies.length / _size;
+            int key = 0;
+            double sum = 0;
+            for (int i = 0; i < len; i += 1) {
+                key = (key % modulus) * _size + text[i];
+                if (i >= _n - 1) {
+                    sum += _logFrequencies[key];
+                }
+            }
+            return sum / (len - _n + 1);
+        }
+
+        @Override
+        public double margin() {
+            return NGRAM_MARGIN;
+        }
+
+        @Override
+        public Scorer copy() {
+            return new NGrams(this);
+        }
+
+        /** Length of the sequences scored. */
+        private final int _n;
+
+        /** Size of the alphabet. */
+        private final int _size;
+
+        /** Base-10 logarithm of the frequency of each N-gram, indexed by
+         *  its characters as the digits of a number in base _size. */
+        private final double[] _logFrequencies;
+    }
+
+    /** A candidate key and the score of its decryption. */
+    static final class Candidate implements Comparable<Candidate> {
+        /** The candidate that inserts ROTORS, sets them to SETTING, and
+         *  decrypts with score SCORE, for a machine with ALPHABET and
+         *  plugboard PLUGBOARD. */
+        Candidate(String[] rotors, int[] setting, Alphabet alphabet,
+                  Permutation plugboard, double score) {
+            _rotors = rotors;
+            char[] chars = new char[setting.length];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = alphabet.toChar(setting[i]);
+            }
+            _setting = new String(chars);
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Set M up as I describe. */
+        void setUp(Machine M) {
+            M.insertRotors(_rotors);
+            M.setRotors(_setting);
+            M.setPlugboard(_plugboard);
+        }
+
+        /** Orders candidates best first. */
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(other._score, _score);
+        }
+
+        /** Returns my settings line (without plugboard). */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor setting. */
+        private final String _setting;
+
+        /** My plugboard. */
+        private final Permutation _plugboard;
+
+        /** Score of my decryption. */
+        private final double _score;
+    }
+
+    /** A task searching units [_lo .. _hi) of the key space, where unit U
+     *  is rotor order U / _size with leftmost setting U % _size.  Yields
+     *  the best candidates it finds, worst first. */
+    private final class SearchTask
+        extends RecursiveTask<PriorityQueue<Candidate>> {
+
+        /** A task searching units LO up to HI for the decryption of TEXT,
+         *  sharing the bits of the lowest score among the best results
+         *  so far in FLOOR. */
+        SearchTask(int[] text, AtomicLong floor, long lo, long hi) {
+            _text = text;
+            _floor = floor;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected PriorityQueue<Candidate> compute() {
+            if (_hi - _lo == 1) {
+                return searchUnit();
+            }
+            long mid = (_lo + _hi) >>> 1;
+            SearchTask left = new SearchTask(_text, _floor, _lo, mid);
+            left.fork();
+            PriorityQueue<Candidate> result =
+                new SearchTask(_text, _floor, mid, _hi).compute();
+            for (Candidate candidate : left.join()) {
+                offer(result, candidate);
+            }
+            return result;
+        }
+
+        /** Return the best candidates in unit _lo, worst first. */
+        private PriorityQueue<Candidate> searchUnit() {
+            String[] order = _orders.get((int) (_lo / _size));
+            Machine M = _template.copy();
+            M.setCompiled(false);
+            M.insertRotors(order);
+            M.setPlugboard(_plugboard);
+            Scorer scorer = _scorer.copy();
+            double margin = scorer.margin();
+            int len = _text.length, prefix = Math.min(_prefix, len);
+            int[] plain = new int[len];
+            int[] setting = new int[order.length - 1];
+            setting[0] = (int) (_lo % _size);
+            PriorityQueue<Candidate> result =
+                new PriorityQueue<>(_results + 1, KeySearch::worstFirst);
+            double floor = Double.NEGATIVE_INFINITY;
+            do {
+                M.setRotors(setting);
+                M.convert(_text, plain, 0, prefix);
+                double score = scorer.score(plain, prefix);
+                if (prefix < len) {
+                    floor = Math.max(floor, Double.longBitsToDouble(
+                                         _floor.get()));
+                    if (score < floor - margin) {
+                        continue;
+                    }
+                    M.convert(_text, plain, prefix, len - prefix);
+                    score = scorer.score(plain, len);
+                }
+                if (result.size() < _results || score > floor) {
+                    offer(result, new Candidate(order, setting.clone(),
+                                                _template.alphabet(),
+                                                _plugboard, score));
+                    if (result.size() == _results) {
+                        floor = Math.max(floor, result.peek().score());
+                        raiseFloor(floor);
+                    }
+                }
+            } while (next(setting));
+            return result;
+        }
+
+        /** Set SETTING to the next setting of all but its leftmost rotor,
+         *  returning false if there is none. */
+        private boolean next(int[] setting) {
+            for (int i = setting.length - 1; i > 0; i -= 1) {
+                setting[i] += 1;
+                if (setting[i] < _size) {
+                    return true;
+                }
+                setting[i] = 0;
+            }
+            return false;
+        }
+
+        /** Raise the shared floor to SCORE if it is lower. */
+        private void raiseFloor(double score) {
+            long bits = Double.doubleToLongBits(score);
+            while (true) {
+                long current = _floor.get();
+                if (Double.longBitsToDouble(current) >= score
+                    || _floor.compareAndSet(current, bits)) {
+                    return;
+                }
+            }
+        }
+
+        /** Add CANDIDATE to BEST, keeping only the _results best. */
+        private void offer(PriorityQueue<Candidate> best,
+                           Candidate candidate) {
+            best.add(candidate);
+            if (best.size() > _results) {
+                best.remove();
+            }
+        }
+
+        /** The ciphertext, as character indices. */
+        private final int[] _text;
+
+        /** Bits of the lowest score among the best results so far. */
+        private final AtomicLong _floor;
+
+        /** The units searched are _lo up to _hi. */
+        private final long _lo, _hi;
+    }
+
+    /** Orders candidates A and B worst first. */
+    private static int worstFirst(Candidate a, Candidate b) {
+        return b.compareTo(a);
+    }
+
+    /** Margin of index of coincidence scores, about twice the standard
+     *  deviation of the index of a prefix of a few dozen characters. */
+    private static final double IOC_MARGIN = 0.02;
+
+    /** Margin of n-gram scores. */
+    private static final double NGRAM_MARGIN = 0.5;
+
+    /** Count assumed for N-grams missing from a sample. */
+    private static final double UNSEEN_COUNT = 0.01;
+
+    /** Maximum size of an n-gram table. */
+    private static final long MAX_NGRAMS = 1 << 24;
+
+    /** The machine whose copies are searched. */
+    private final Machine _template;
+
+    /** The plugboard used by all candidates. */
+    private final Permutation _plugboard;
+
+    /** Scorer of decryptions, copied for each task. */
+    private final Scorer _scorer;
+
+    /** Number of best candidates found. */
+    private final int _results;
+
+    /** Number of characters on which candidates are first scored. */
+    private final int _prefix;
+
+    /** Orders of rotors searched. */
+    private final List<String[]> _orders;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+}
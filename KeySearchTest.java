@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Naman Patel
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A plaintext long enough to be recognized. */
+    private static final String PLAINTEXT =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS";
+
+    /** Return a machine with three slots and two pawls whose available
+     *  rotors are the naval reflectors B and C and moving rotors I, II
+     *  and III, with no rotors inserted. */
+    private Machine machine() {
+        return navalMachine(3, 2, "B", "C", "I", "II", "III");
+    }
+
+    /** Return PLAINTEXT encrypted by M with rotors ROTORS at SETTING. */
+    private String encrypt(Machine M, String[] rotors, String setting) {
+        M.insertRotors(rotors);
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation("", UPPER));
+        return M.convert(PLAINTEXT);
+    }
+
+    /** Check that searching CIPHERTEXT with M and SCORER finds ROTORS at
+     *  SETTING first. */
+    private void checkFound(Machine M, KeySearch.Scorer scorer,
+                            String ciphertext, String[] rotors,
+                            String setting) {
+        KeySearch search = new KeySearch(M, new Permutation("", UPPER),
+                                         scorer, 3, 32);
+        List<KeySearch.Candidate> best =
+            search.search(ciphertext, ForkJoinPool.commonPool());
+        assertEquals(3, best.size());
+        assertArrayEquals(rotors, best.get(0).rotors());
+        assertEquals(setting, best.get(0).setting());
+        assertTrue(best.get(0).score() >= best.get(1).score());
+        best.get(0).setUp(M);
+        assertEquals(PLAINTEXT, M.convert(ciphertext));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkIndexOfCoincidence() {
+        KeySearch.Scorer scorer = KeySearch.indexOfCoincidence(4);
+        assertEquals(1.0, scorer.score(new int[] { 2, 2, 2 }, 3), 1e-9);
+        assertEquals(0.0, scorer.score(new int[] { 0, 1, 2, 3 }, 4), 1e-9);
+        assertEquals(2.0 / 12, scorer.score(new int[] { 0, 0, 1, 2 }, 4),
+                     1e-9);
+    }
+
+    @Test
+    public void checkSearchByIndexOfCoincidence() {
+        Machine M = machine();
+        String[] rotors = { "C", "III", "I" };
+        String ciphertext = encrypt(M, rotors, "QK");
+        checkFound(M, KeySearch.indexOfCoincidence(UPPER.size()),
+                   ciphertext, rotors, "QK");
+    }
+
+    @Test
+    public void checkSearchByNGrams() {
+        Machine M = machine();
+        String[] rotors = { "B", "II", "III" };
+        String ciphertext = encrypt(M, rotors, "EV");
+        checkFound(M, KeySearch.ngrams(UPPER, PLAINTEXT, 3), ciphertext,
+                   rotors, "EV");
+    }
+
+}
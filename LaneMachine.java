@@ -0,0 +1,329 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independently keyed messages at once, each in its own
+ *  lane: a machine state (rotors, settings and plugboard) that advances
+ *  one character per message at each step, in step with the others.
+ *  All lanes use the available rotors of one configuration, whose
+ *  conversion tables, notches and the plugboards of the lanes are held
+ *  in flat arrays, so that each step is the same sequence of table
+ *  lookups in every lane.
+ *
+ *  This class steps the lanes one after another.  VectorLaneMachine
+ *  steps them all at once with the Vector API, which create uses when
+ *  the module jdk.incubator.vector is present (that is, when the JVM is
+ *  started with --add-modules jdk.incubator.vector).  A LaneMachine may
+ *  be used by only one thread at a time.
+ *  @author Naman Patel
+ */
+class LaneMachine {
+
+    /** Return a new LaneMachine for the configuration of TEMPLATE that
+     *  uses the Vector API if it is available, or null if TEMPLATE's
+     *  alphabet is too large for its rotors to be tabulated. */
+    static LaneMachine create(Machine template) {
+        if (template.alphabet().size() > Rotor.MAX_TABLE_SIZE) {
+            return null;
+        }
+        if (VECTOR_API) {
+            try {
+                return (LaneMachine) Class.forName("enigma.VectorLaneMachine")
+                    .getDeclaredConstructor(Machine.class)
+                    .newInstance(template);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* Fall through to the scalar lanes. */
+            }
+        }
+        return new LaneMachine(template, DEFAULT_LANES);
+    }
+
+    /** A LaneMachine with LANES lanes for the configuration of TEMPLATE:
+     *  its alphabet, number of rotor slots and available rotors.  The
+     *  alphabet must have at most Rotor.MAX_TABLE_SIZE characters. */
+    LaneMachine(Machine template, int lanes) {
+        int n = template.alphabet().size();
+        if (n > Rotor.MAX_TABLE_SIZE) {
+            throw error("alphabet too large for lanes");
+        }
+        _size = n;
+        _lanes = lanes;
+        _numRotors = template.numRotors();
+        _rotorIds = new HashMap<>();
+        ArrayList<Rotor> rotors = new ArrayList<>(template._allRotors);
+        _tables = new int[2 * rotors.size() * n * n];
+        _notches = new int[rotors.size() * n];
+        _rotorRotates = new boolean[rotors.size()];
+        for (int r = 0; r < rotors.size(); r += 1) {
+            Rotor rotor = rotors.get(r).copy();
+            _rotorIds.put(rotor.name(), r);
+            _rotorRotates[r] = rotor.rotates();
+            int forward = forwardBase(r), backward = backwardBase(r);
+            int settings = rotor.reflecting() ? 1 : n;
+            for (int s = 0; s < settings; s += 1) {
+                rotor.set(s);
+                for (int p = 0; p < n; p += 1) {
+                    _tables[forward + s * n + p] = rotor.convertForward(p);
+                    _tables[backward + s * n + p] = rotor.convertBackward(p);
+                }
+                _notches[r * n + s] = rotor.notchAt(s) ? 1 : 0;
+            }
+        }
+        int slots = _numRotors * lanes;
+        _settings = new int[slots];
+        _forwardBases = new int[slots];
+        _backwardBases = new int[slots];
+        _notchBases = new int[slots];
+        _rotates = new boolean[slots];
+        _plugboards = new int[lanes * n];
+        _plugboardBases = new int[lanes];
+        for (int k = 0; k < lanes; k += 1) {
+            _plugboardBases[k] = k * n;
+            for (int p = 0; p < n; p += 1) {
+                _plugboards[k * n + p] = p;
+            }
+        }
+        _in = new int[lanes];
+        _out = new int[lanes];
+    }
+
+    /** Return the number of lanes I convert at once. */
+    final int lanes() {
+        return _lanes;
+    }
+
+    /** Return the size of my alphabet. */
+    final int size() {
+        return _size;
+    }
+
+    /** Return the number of messages added and not yet converted. */
+    final int pending() {
+        return _jobs.size();
+    }
+
+    /** Add MESSAGE, an array of character indices, to be converted in
+     *  place by the next call to convertAll, starting from the current
+     *  rotors, settings and plugboard of M.  M must have my
+     *  configuration; it is not changed. */
+    final void add(Machine M, int[] message) {
+        if (M.numRotors() != _numRotors || M.alphabet().size() != _size) {
+            throw error("machine does not match lanes");
+        }
+        Job job = new Job();
+        job.rotors = new int[_numRotors];
+        job.settings = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = M.rotor(i);
+            Integer id = _rotorIds.get(rotor.name());
+            if (id == null) {
+                throw error("rotor %s not available to lanes", rotor.name());
+            }
+            job.rotors[i] = id;
+            job.settings[i] = rotor.permutation().wrap(rotor.setting());
+        }
+        job.plugboard = new int[_size];
+        for (int p = 0; p < _size; p += 1) {
+            job.plugboard[p] = M.plugboard().permute(p);
+        }
+        job.message = message;
+        _jobs.add(job);
+    }
+
+    /** Convert all the messages added since the last call, each in
+     *  place, as if by a copy of the machine from which it was added. */
+    final void convertAll() {
+        Job[] current = new Job[_lanes];
+        int[] posns = new int[_lanes];
+        int next = 0;
+        for (int k = 0; k < _lanes; k += 1) {
+            next = load(k, current, next);
+        }
+        long total = 0;
+        while (true) {
+            int block = Integer.MAX_VALUE;
+            for (int k = 0; k < _lanes; k += 1) {
+                if (current[k] != null) {
+                    block = Math.min(block,
+                                     current[k].message.length - posns[k]);
+                }
+            }
+            if (block == Integer.MAX_VALUE) {
+                break;
+            }
+            for (int t = 0; t < block; t += 1) {
+                for (int k = 0; k < _lanes; k += 1) {
+                    if (current[k] != null) {
+                        _in[k] = current[k].message[posns[k] + t];
+                    }
+                }
+                convertLanes(_in, _out);
+                for (int k = 0; k < _lanes; k += 1) {
+                    if (current[k] != null) {
+                        current[k].message[posns[k] + t] = _out[k];
+                    }
+                }
+            }
+            for (int k = 0; k < _lanes; k += 1) {
+                if (current[k] != null) {
+                    posns[k] += block;
+                    if (posns[k] == current[k].message.length) {
+                        total += posns[k];
+                        posns[k] = 0;
+                        next = load(k, current, next);
+                    }
+                }
+            }
+        }
+        _jobs.clear();
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.add(total);
+        }
+    }
+
+    /** Load the first nonempty job at or after index NEXT in _jobs into
+     *  lane K, recording it in CURRENT[K], or set CURRENT[K] to null if
+     *  there is none.  Returns the index of the job after it. */
+    private int load(int k, Job[] current, int next) {
+        while (next < _jobs.size() && _jobs.get(next).message.length == 0) {
+            next += 1;
+        }
+        if (next == _jobs.size()) {
+            current[k] = null;
+            return next;
+        }
+        Job job = _jobs.get(next);
+        current[k] = job;
+        for (int i = 0; i < _numRotors; i += 1) {
+            int slot = i * _lanes + k, r = job.rotors[i];
+            _settings[slot] = job.settings[i];
+            _forwardBases[slot] = forwardBase(r);
+            _backwardBases[slot] = backwardBase(r);
+            _notchBases[slot] = r * _size;
+            _rotates[slot] = _rotorRotates[r];
+        }
+        System.arraycopy(job.plugboard, 0, _plugboards, k * _size, _size);
+        return next + 1;
+    }
+
+    /** Advance each lane K by one keystroke and store in OUT[K] the
+     *  result of converting IN[K] in that lane, as for
+     *  Machine.convert(int). */
+    void convertLanes(int[] in, int[] out) {
+        int n = _size, last = _numRotors - 1, lanes = _lanes;
+        for (int k = 0; k < lanes; k += 1) {
+            boolean atNotch = false, leftRotates = false;
+            for (int i = 0, slot = k; i <= last; i += 1, slot += lanes) {
+                boolean rotates = _rotates[slot];
+                boolean rightAtNotch = i < last
+                    && _notches[_notchBases[slot + lanes]
+                                + _settings[slot + lanes]] != 0;
+                if (rotates
+                    && (i == last || rightAtNotch || atNotch && leftRotates)) {
+                    int s = _settings[slot] + 1;
+                    _settings[slot] = s == n ? 0 : s;
+                }
+                atNotch = rightAtNotch;
+                leftRotates = rotates;
+            }
+            int c = _plugboards[_plugboardBases[k] + in[k]];
+            for (int slot = last * lanes + k; slot >= 0; slot -= lanes) {
+                c = _tables[_forwardBases[slot] + _settings[slot] * n + c];
+            }
+            for (int slot = lanes + k; slot <= last * lanes + k;
+                 slot += lanes) {
+                c = _tables[_backwardBases[slot] + _settings[slot] * n + c];
+            }
+            out[k] = _plugboards[_plugboardBases[k] + c];
+        }
+    }
+
+    /** Return the offset in _tables of the forward conversions of the
+     *  rotor numbered R. */
+    private int forwardBase(int r) {
+        return 2 * r * _size * _size;
+    }
+
+    /** Return the offset in _tables of the backward conversions of the
+     *  rotor numbered R. */
+    private int backwardBase(int r) {
+        return (2 * r + 1) * _size * _size;
+    }
+
+    /** A message to be converted and the machine state it starts in. */
+    private static final class Job {
+        /** The numbers of the rotors in each slot. */
+        private int[] rotors;
+        /** The setting of the rotor in each slot. */
+        private int[] settings;
+        /** The plugboard, as a table of the permutation. */
+        private int[] plugboard;
+        /** The character indices of the message. */
+        private int[] message;
+    }
+
+    /** True iff the Vector API is available. */
+    static final boolean VECTOR_API =
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** Number of lanes when the Vector API is not used. */
+    static final int DEFAULT_LANES = 8;
+
+    /** Size of my alphabet. */
+    final int _size;
+
+    /** Number of my lanes. */
+    final int _lanes;
+
+    /** Number of rotor slots in each lane. */
+    final int _numRotors;
+
+    /** Numbers of the available rotors, by name. */
+    private final HashMap<String, Integer> _rotorIds;
+
+    /** Entry K is true iff available rotor number K rotates. */
+    private final boolean[] _rotorRotates;
+
+    /** The forward and then the backward conversions of each available
+     *  rotor in turn, each indexed by SETTING * _size + INPUT.  Only the
+     *  0 setting of a reflector is filled in. */
+    final int[] _tables;
+
+    /** Entry R * _size + P is 1 iff available rotor number R has a notch
+     *  at setting P, and otherwise 0. */
+    final int[] _notches;
+
+    /* Each of the following arrays has an entry for each rotor slot I
+     * (0 for the reflector) in each lane K, at index I * _lanes + K. */
+
+    /** The setting of the rotor in each slot. */
+    final int[] _settings;
+
+    /** The offset in _tables of the forward conversions of the rotor in
+     *  each slot. */
+    final int[] _forwardBases;
+
+    /** The offset in _tables of the backward conversions of the rotor in
+     *  each slot. */
+    final int[] _backwardBases;
+
+    /** The offset in _notches of the rotor in each slot. */
+    final int[] _notchBases;
+
+    /** True iff the rotor in each slot rotates. */
+    final boolean[] _rotates;
+
+    /** The plugboard of lane K, a table of its permutation, starting at
+     *  index _plugboardBases[K] = K * _size. */
+    final int[] _plugboards, _plugboardBases;
+
+    /** The character of each lane converted at the current step, and
+     *  its conversion. */
+    private final int[] _in, _out;
+
+    /** The messages added and not yet converted, in order. */
+    private final ArrayList<Job> _jobs = new ArrayList<>();
+}
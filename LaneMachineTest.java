@@ -0,0 +1,130 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LaneMachine class.
+ *  @author Naman Patel
+ */
+public class LaneMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Names of the naval rotors used, reflectors first. */
+    private static final String[] REFLECTORS = { "B", "C" },
+        FIXED = { "Beta", "Gamma" },
+        MOVING = { "I", "II", "III", "IV", "V", "VI", "VII", "VIII" };
+
+    /** Return a naval machine with five slots and three pawls, with no
+     *  rotors inserted. */
+    private Machine machine() {
+        ArrayList<String> all = new ArrayList<>();
+        all.addAll(Arrays.asList(REFLECTORS));
+        all.addAll(Arrays.asList(FIXED));
+        all.addAll(Arrays.asList(MOVING));
+        return navalMachine(5, 3, all.toArray(new String[0]));
+    }
+
+    /** Set up M with rotors, settings and plugboard chosen using
+     *  RANDOM. */
+    private void randomSetUp(Machine M, Random random) {
+        String[] rotors = new String[5];
+        rotors[0] = REFLECTORS[random.nextInt(REFLECTORS.length)];
+        rotors[1] = FIXED[random.nextInt(FIXED.length)];
+        for (int i = 2; i < rotors.length; i += 1) {
+            do {
+                rotors[i] = MOVING[random.nextInt(MOVING.length)];
+            } while (rotors[i].equals(rotors[i - 1])
+                     || i == 4 && rotors[i].equals(rotors[2]));
+        }
+        M.insertRotors(rotors);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < rotors.length; i += 1) {
+            setting.append(UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        M.setRotors(setting.toString());
+        M.setPlugboard(new Permutation(random.nextBoolean() ? ""
+                                       : "(AB) (CD) (QZ)", UPPER));
+    }
+
+    /** Check that LANES converts COUNT random messages, of random lengths
+     *  below MAXLENGTH, as Machines do. */
+    private void checkLanes(LaneMachine lanes, int count, int maxLength) {
+        Random random = new Random(count + maxLength);
+        Machine M = machine();
+        int[][] messages = new int[count][], expected = new int[count][];
+        for (int k = 0; k < count; k += 1) {
+            randomSetUp(M, random);
+            messages[k] = new int[random.nextInt(maxLength)];
+            for (int i = 0; i < messages[k].length; i += 1) {
+                messages[k][i] = random.nextInt(UPPER.size());
+            }
+            lanes.add(M, messages[k]);
+            expected[k] = messages[k].clone();
+            M.convert(expected[k], expected[k], 0, expected[k].length);
+        }
+        assertEquals(count, lanes.pending());
+        lanes.convertAll();
+        assertEquals(0, lanes.pending());
+        for (int k = 0; k < count; k += 1) {
+            assertArrayEquals(msg("lanes", "message %d", k),
+                              expected[k], messages[k]);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScalarLanes() {
+        LaneMachine lanes = new LaneMachine(machine(), 3);
+        assertEquals(3, lanes.lanes());
+        checkLanes(lanes, 1, 100);
+        checkLanes(lanes, 50, 1000);
+        checkLanes(lanes, 200, 20);
+    }
+
+    @Test
+    public void checkCreatedLanes() {
+        LaneMachine lanes = LaneMachine.create(machine());
+        assertEquals(LaneMachine.VECTOR_API,
+                     lanes instanceof VectorLaneMachine);
+        checkLanes(lanes, 1, 100);
+        checkLanes(lanes, 50, 1000);
+        checkLanes(lanes, 200, 20);
+    }
+
+    @Test
+    public void checkMessageOnKnownMachine() {
+        Machine M = machine();
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        String text = "FROMHISSHOULDERHIAWATHA";
+        int[] message = new int[text.length()];
+        for (int i = 0; i < message.length; i += 1) {
+            message[i] = UPPER.toInt(text.charAt(i));
+        }
+        LaneMachine lanes = LaneMachine.create(M);
+        lanes.add(M, message);
+        lanes.convertAll();
+        StringBuilder result = new StringBuilder();
+        for (int c : message) {
+            result.append(UPPER.toChar(c));
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", result.toString());
+        assertEquals(UPPER.toInt('E'), M.rotor(4).setting());
+    }
+
+}
@@ -0,0 +1,302 @@
+package enigma;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A source of text lines read in bulk from a byte channel.  Lines are
+ *  split on "\n", "\r\n" or "\r" at the byte level and decoded one at a
+ *  time, so the charset must encode these as single bytes, as UTF-8 and
+ *  the ISO-8859 charsets do.  A file may instead be read through
+ *  memory-mapped windows.
+ *  @author Naman Patel
+ */
+class LineReader {
+
+    /** A reader of lines from CHANNEL, decoded with CHARSET.  If MAPPED,
+     *  CHANNEL must be a FileChannel, which is read through mapped
+     *  windows rather than copied into a buffer.  If BEFOREREAD is not
+     *  null, it is flushed before every read from CHANNEL that might
+     *  block. */
+    LineReader(ReadableByteChannel channel, Charset charset, boolean mapped,
+               Flushable beforeRead) {
+        _channel = channel;
+        _mapped = mapped;
+        _beforeRead = beforeRead;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _ascii = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII);
+        if (mapped) {
+            _bytes = ByteBuffer.allocate(0);
+        } else {
+            _bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        _chars = CharBuffer.allocate(INITIAL_LINE_SIZE);
+    }
+
+    /** A reader of lines from the remaining bytes of BYTES, decoded with
+     *  CHARSET.  The lines are read directly from BYTES, which must not
+     *  be modified while I am in use. */
+    LineReader(ByteBuffer bytes, Charset charset) {
+        this(null, charset, true, null);
+        _bytes = bytes;
+        _base = -bytes.position();
+        _start = bytes.position();
+        _limit = bytes.limit();
+        _eof = true;
+    }
+
+    /** A reader of lines from the file named NAME in the default charset,
+     *  mapped into memory iff MAPPED. */
+    static LineReader open(String name, boolean mapped) {
+        try {
+            return new LineReader(FileChannel.open(Paths.get(name),
+                                                   StandardOpenOption.READ),
+                                  Charset.defaultCharset(), mapped, null);
+        } catch (IOException | SecurityException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A reader of lines from the standard input in the default charset
+     *  that flushes BEFOREREAD before waiting for more input. */
+    static LineReader standardInput(Flushable beforeRead) {
+        LineReader result =
+            new LineReader(new FileInputStream(FileDescriptor.in)
+                           .getChannel(),
+                           Charset.defaultCharset(), false, beforeRead);
+        result._keepOpen = true;
+        return result;
+    }
+
+    /** Return the next line of input, without its terminator, or null if
+     *  there are no more lines.  The result is array-backed and remains
+     *  valid only until the next call. */
+    CharBuffer readLine() {
+        int scan = _start;
+        while (true) {
+            for (; scan < _limit; scan += 1) {
+                byte b = _bytes.get(scan);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+            }
+            if (scan < _limit) {
+                int end = scan;
+                if (_bytes.get(scan) == '\r') {
+                    if (scan + 1 == _limit && !_eof) {
+                        scan -= _start;
+                        fill();
+                        scan += _start;
+                        continue;
+                    }
+                    if (scan + 1 < _limit && _bytes.get(scan + 1) == '\n') {
+                        scan += 1;
+                    }
+                }
+                return decode(end, scan + 1);
+            } else if (_eof) {
+                return _start == _limit ? null : decode(_limit, _limit);
+            }
+            scan -= _start;
+            fill();
+            scan += _start;
+        }
+    }
+
+    /** Return the offset in my input, in bytes, of the start of the next
+     *  line. */
+    long position() {
+        return _base + _start;
+    }
+
+    /** Continue reading at byte offset POSITION of my input, which must be
+     *  a file. */
+    void seek(long position) {
+        if (!(_channel instanceof FileChannel)) {
+            throw error("input is not seekable");
+        }
+        try {
+            ((FileChannel) _channel).position(position);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        _base = position;
+        _start = _limit = 0;
+        _eof = false;
+    }
+
+    /** Close my input, unless it is the standard input. */
+    void close() {
+        if (_channel == null || _keepOpen) {
+            return;
+        }
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Decode my bytes from _start up to END into _chars and make NEXT the
+     *  start of the following line.  Returns _chars. */
+    private CharBuffer decode(int end, int next) {
+        int len = end - _start;
+        if (_chars.capacity() < len) {
+            _chars = CharBuffer.allocate(Math.max(len, 2 * _chars.capacity()));
+        }
+        _chars.clear();
+        char[] chars = _chars.array();
+        int k;
+        for (k = 0; _ascii && k < len; k += 1) {
+            byte b = _bytes.get(_start + k);
+            if (b < 0) {
+                break;
+            }
+            chars[k] = (char) b;
+        }
+        if (k < len) {
+            ByteBuffer line = _bytes.duplicate();
+            line.limit(end).position(_start);
+            _decoder.reset();
+            CoderResult result = _decoder.decode(line, _chars, true);
+            while (result.isOverflow()) {
+                growChars();
+                result = _decoder.decode(line, _chars, true);
+            }
+            result = _decoder.flush(_chars);
+            while (result.isOverflow()) {
+                growChars();
+                result = _decoder.flush(_chars);
+            }
+            _chars.flip();
+        } else {
+            _chars.limit(len);
+        }
+        _start = next;
+        return _chars;
+    }
+
+    /** Double the capacity of _chars, keeping its contents. */
+    private void growChars() {
+        CharBuffer larger = CharBuffer.allocate(2 * _chars.capacity());
+        _chars.flip();
+        larger.put(_chars);
+        _chars = larger;
+    }
+
+    /** Make more input available after _limit, moving the unread bytes
+     *  from _start on to the beginning of my buffer.  Sets _eof if there
+     *  is no more input. */
+    private void fill() {
+        try {
+            if (_mapped) {
+                FileChannel file = (FileChannel) _channel;
+                long from = _base + _start;
+                long size = Math.min(file.size() - from,
+                                     Math.max(MAP_WINDOW,
+                                              2L * (_limit - _start)));
+                if (size > Integer.MAX_VALUE) {
+                    throw error("input line too long");
+                }
+                _bytes = file.map(FileChannel.MapMode.READ_ONLY, from, size);
+                _base = from;
+                _start = 0;
+                _limit = (int) size;
+                _eof = from + size >= file.size();
+                return;
+            }
+            _bytes.limit(_limit).position(_start);
+            _bytes.compact();
+            _base += _start;
+            _limit -= _start;
+            _start = 0;
+            if (_limit == _bytes.capacity()) {
+                ByteBuffer larger =
+                    ByteBuffer.allocateDirect(2 * _bytes.capacity());
+                _bytes.flip();
+                larger.put(_bytes);
+                _bytes = larger;
+            }
+            _bytes.limit(_bytes.capacity()).position(_limit);
+            if (_beforeRead != null) {
+                _beforeRead.flush();
+            }
+            int n = _channel.read(_bytes);
+            while (n == 0) {
+                n = _channel.read(_bytes);
+            }
+            if (n < 0) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the buffer into which unmapped input is read. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Minimum size of each mapped window of a mapped input. */
+    static final int MAP_WINDOW = 1 << 26;
+
+    /** Initial capacity of the buffer holding a decoded line. */
+    private static final int INITIAL_LINE_SIZE = 1024;
+
+    /** Source of my input, or null if it is all in _bytes. */
+    private final ReadableByteChannel _channel;
+
+    /** True iff _channel is read through mapped windows. */
+    private final boolean _mapped;
+
+    /** Flushed before each read from _channel, or null. */
+    private final Flushable _beforeRead;
+
+    /** True iff close() should leave _channel open. */
+    private boolean _keepOpen;
+
+    /** Decoder for the charset of my input. */
+    private final CharsetDecoder _decoder;
+
+    /** True iff bytes 0-127 of my charset decode to themselves. */
+    private final boolean _ascii;
+
+    /** Buffered or mapped input bytes; those at [_start .. _limit) are
+     *  yet to be returned as lines. */
+    private ByteBuffer _bytes;
+
+    /** The decoded text of the last line returned. */
+    private CharBuffer _chars;
+
+    /** Offset in my input of the first byte of _bytes. */
+    private long _base;
+
+    /** Index in _bytes of the start of the next line. */
+    private int _start;
+
+    /** Index in _bytes just past the last valid input byte. */
+    private int _limit;
+
+    /** True iff _bytes holds the last of my input. */
+    private boolean _eof;
+
+}
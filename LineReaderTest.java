@@ -0,0 +1,323 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Naman Patel
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Characters encoded in UTF-8 in two, three and four bytes. */
+    private static final String WIDE = "\u00e9\u20ac\ud834\udd1e";
+
+    /** Sizes of the reads by which input is delivered in the tests. */
+    private static final int[] STEPS = { 1, 2, 3, 4, 7, 1 << 16 };
+
+    /** Sizes of the reads by which input of a buffer or more is
+     *  delivered, each dividing BUFFER_SIZE. */
+    private static final int[] LARGE_STEPS = { 1 << 12, 1 << 16 };
+
+    /** A channel that delivers the bytes of an array at most _step at a
+     *  time, alternating with reads that deliver none. */
+    private static class Trickle implements ReadableByteChannel {
+
+        /** A channel delivering BYTES, at most STEP at a time. */
+        Trickle(byte[] bytes, int step) {
+            _bytes = bytes;
+            _step = step;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (_next == _bytes.length) {
+                return -1;
+            }
+            _empty = !_empty;
+            if (_empty) {
+                return 0;
+            }
+            int n = Math.min(Math.min(_step, dst.remaining()),
+                             _bytes.length - _next);
+            dst.put(_bytes, _next, n);
+            _next += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** The bytes delivered. */
+        private final byte[] _bytes;
+
+        /** Largest number of bytes delivered by one read. */
+        private final int _step;
+
+        /** Index of the next byte to deliver. */
+        private int _next;
+
+        /** True iff the last read delivered nothing. */
+        private boolean _empty;
+    }
+
+    /** Return the lines of INPUT, reading through a LineReader decoding
+     *  CHARSET from a channel that delivers at most STEP bytes at a time,
+     *  and check that the position of each line is that given by
+     *  POSITIONS, if it is not null. */
+    private List<String> lines(byte[] input, Charset charset, int step,
+                               long[] positions) {
+        LineReader reader =
+            new LineReader(new Trickle(input, step), charset, false, null);
+        return readAll(reader, positions);
+    }
+
+    /** Return the remaining lines of READER, checking that the position
+     *  of each is the corresponding member of POSITIONS, if that is not
+     *  null. */
+    private List<String> readAll(LineReader reader, long[] positions) {
+        ArrayList<String> result = new ArrayList<>();
+        while (true) {
+            if (positions != null && result.size() < positions.length) {
+                assertEquals(msg("position", "line %d", result.size()),
+                             positions[result.size()], reader.position());
+            }
+            CharBuffer line = reader.readLine();
+            if (line == null) {
+                return result;
+            }
+            result.add(line.toString());
+        }
+    }
+
+    /** Check that reading INPUT, encoded in UTF-8, in steps of each of
+     *  STEPS gives the lines EXPECTED. */
+    private void checkLines(String input, String... expected) {
+        checkLines(STEPS, input, expected);
+    }
+
+    /** Check that reading INPUT, encoded in UTF-8, in steps of each of
+     *  READSTEPS gives the lines EXPECTED. */
+    private void checkLines(int[] readSteps, String input,
+                            String... expected) {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int step : readSteps) {
+            assertEquals(msg("lines", "step %d", step),
+                         Arrays.asList(expected),
+                         lines(bytes, StandardCharsets.UTF_8, step, null));
+        }
+    }
+
+    /** Return a string of N copies of CH. */
+    private static String repeat(char ch, int n) {
+        char[] result = new char[n];
+        Arrays.fill(result, ch);
+        return new String(result);
+    }
+
+    /** Return a new temporary file holding the UTF-8 encoding of
+     *  PARTS. */
+    private Path file(String... parts) throws IOException {
+        Path result = Files.createTempFile("enigma", ".in");
+        try (FileChannel channel =
+                 FileChannel.open(result, StandardOpenOption.WRITE)) {
+            for (String part : parts) {
+                ByteBuffer bytes =
+                    ByteBuffer.wrap(part.getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the lines of FILE, read through mapped windows iff
+     *  MAPPED. */
+    private List<String> fileLines(Path file, boolean mapped)
+        throws IOException {
+        LineReader reader =
+            new LineReader(FileChannel.open(file, StandardOpenOption.READ),
+                           StandardCharsets.UTF_8, mapped, null);
+        try {
+            return readAll(reader, null);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTerminators() {
+        checkLines("");
+        checkLines("\n", "");
+        checkLines("A", "A");
+        checkLines("A\nB\n", "A", "B");
+        checkLines("A\r\nB\r\n", "A", "B");
+        checkLines("A\rB\r", "A", "B");
+        checkLines("A\n\nB", "A", "", "B");
+        checkLines("A\r\r\nB\n\r", "A", "", "B", "");
+        checkLines("A\r\n\r\nB\r", "A", "", "B");
+        checkLines("\r\n\r", "", "");
+    }
+
+    @Test
+    public void checkPositions() {
+        byte[] bytes = ("AB\r\nC\rDE\n\n" + WIDE + "\r\nF")
+            .getBytes(StandardCharsets.UTF_8);
+        long[] positions = { 0, 4, 6, 9, 10, 21 };
+        for (int step : STEPS) {
+            assertEquals(Arrays.asList("AB", "C", "DE", "", WIDE, "F"),
+                         lines(bytes, StandardCharsets.UTF_8, step,
+                               positions));
+        }
+    }
+
+    @Test
+    public void checkCarriageReturnAtBufferEnd() {
+        String full = repeat('A', LineReader.BUFFER_SIZE - 1);
+        checkLines(LARGE_STEPS, full + "\r\nB", full, "B");
+        checkLines(LARGE_STEPS, full + "\rB", full, "B");
+        checkLines(LARGE_STEPS, full + "\r\r\n", full, "");
+        checkLines(LARGE_STEPS, full + "\r", full);
+    }
+
+    @Test
+    public void checkMultiByteCharacters() {
+        checkLines(WIDE, WIDE);
+        checkLines("A" + WIDE + "\n" + WIDE + WIDE + "\r\nB" + WIDE,
+                   "A" + WIDE, WIDE + WIDE, "B" + WIDE);
+        String wide = repeat('\u20ac', LineReader.BUFFER_SIZE / 3 + 1);
+        checkLines(LARGE_STEPS, "A" + wide + "\n" + wide, "A" + wide,
+                   wide);
+        String latin = "A\u00e9\u00ff\r\nB\u00c0";
+        for (int step : STEPS) {
+            assertEquals(Arrays.asList("A\u00e9\u00ff", "B\u00c0"),
+                         lines(latin.getBytes(StandardCharsets.ISO_8859_1),
+                               StandardCharsets.ISO_8859_1, step, null));
+        }
+    }
+
+    @Test
+    public void checkLongLines() {
+        String longLine = repeat('X', 3 * LineReader.BUFFER_SIZE + 5);
+        byte[] bytes =
+            ("A\n" + longLine + "\r\nB").getBytes(StandardCharsets.UTF_8);
+        long[] positions = { 0, 2, 2 + longLine.length() + 2 };
+        assertEquals(Arrays.asList("A", longLine, "B"),
+                     lines(bytes, StandardCharsets.UTF_8, 1 << 16,
+                           positions));
+    }
+
+    @Test
+    public void checkByteBuffer() {
+        ByteBuffer bytes =
+            ByteBuffer.wrap(("skip\nA\r\n" + WIDE + "\rB")
+                            .getBytes(StandardCharsets.UTF_8));
+        bytes.position(5);
+        LineReader reader = new LineReader(bytes, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("A", WIDE, "B"),
+                     readAll(reader, new long[] { 0, 3, 13 }));
+    }
+
+    @Test
+    public void checkSeekAndFlush() throws IOException {
+        Path file = file("A\r\n", WIDE, "\nB\n");
+        int[] flushes = { 0 };
+        LineReader reader =
+            new LineReader(FileChannel.open(file, StandardOpenOption.READ),
+                           StandardCharsets.UTF_8, false,
+                           () -> flushes[0] += 1);
+        try {
+            assertEquals("A", reader.readLine().toString());
+            long second = reader.position();
+            assertEquals(3, second);
+            assertEquals(WIDE, reader.readLine().toString());
+            assertEquals("B", reader.readLine().toString());
+            assertNull(reader.readLine());
+            assertTrue(flushes[0] > 0);
+            reader.seek(second);
+            assertEquals(second, reader.position());
+            assertEquals(Arrays.asList(WIDE, "B"), readAll(reader, null));
+        } finally {
+            reader.close();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkMappedWindows() throws IOException {
+        int window = LineReader.MAP_WINDOW;
+        String first = repeat('A', window - 4);
+        Path file = file(first, "\n", WIDE, WIDE, "\r\nB\n");
+        try {
+            List<String> expected =
+                Arrays.asList(first, WIDE + WIDE, "B");
+            assertEquals(expected, fileLines(file, true));
+            assertEquals(expected, fileLines(file, false));
+        } finally {
+            Files.delete(file);
+        }
+        file = file(first, "AAA\r\nB\r", "C");
+        try {
+            List<String> expected = Arrays.asList(first + "AAA", "B", "C");
+            assertEquals(expected, fileLines(file, true));
+            assertEquals(expected, fileLines(file, false));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkDeferredDecoding() {
+        String line = repeat('A', 3000) + "BC";
+        byte[] input = (line + "\nD\n").getBytes(StandardCharsets.US_ASCII);
+        StringBuilder doubled = new StringBuilder();
+        for (char c : line.toCharArray()) {
+            doubled.append(c).append(c);
+        }
+        for (int step : STEPS) {
+            assertEquals(msg("lines", "step %d", step),
+                         Arrays.asList(doubled.toString(), "DD"),
+                         lines(input, DEFERRED, step, null));
+        }
+    }
+
+    @Test
+    public void checkStandardInputKept() {
+        LineReader.standardInput(null).close();
+        assertTrue("standard input closed", FileDescriptor.in.valid());
+    }
+
+}
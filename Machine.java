@@ -1,5 +1,8 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Collection;
 
@@ -12,13 +15,35 @@ class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors.  These serve only as templates: I insert copies
+     *  of them (see Rotor.copy) and never change their settings, so
+     *  ALLROTORS may be shared by any number of machines, in any number
+     *  of threads. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
         _alphabet = alpha;
         _numrotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _rotorsByName = new HashMap<>();
+        for (Rotor x : _allRotors) {
+            _rotorsByName.put(x.name(), x);
+        }
+    }
+
+    /** Return a new machine with my alphabet, rotor slots, pawls and
+     *  available rotors, which may be used independently of me.  It has
+     *  no rotors inserted and is compiled iff I am. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numrotors, _pawls,
+                                     _allRotors);
+        result.setCompiled(_compiled);
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -31,21 +56,31 @@ class Machine {
         return _pawls;
     }
 
+    /** Return the rotor in my slot K, where slot 0 holds the reflector. */
+    Rotor rotor(int k) {
+        endKeystream();
+        return myRotors[k];
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        HashMap<String, Rotor> allRotors = new HashMap<String, Rotor>();
-        for (Rotor x : _allRotors) {
-            allRotors.put(x.name(), x);
-        }
+        _keystream = null;
+        Rotor[] previous = myRotors;
         myRotors = new Rotor[rotors.length];
         for (int i = 0; i < rotors.length; i++) {
-            if (allRotors.containsKey(rotors[i])) {
-                myRotors[i] = allRotors.get(rotors[i]);
+            Rotor template = _rotorsByName.get(rotors[i]);
+            if (template != null) {
+                myRotors[i] = template.copy();
             } else {
                 throw new EnigmaException("misnamed rotors");
             }
+            for (int j = 0; j < i; j += 1) {
+                if (rotors[j].equals(rotors[i])) {
+                    throw error("rotor %s used twice", rotors[i]);
+                }
+            }
         }
         for (int i = 0; i < rotors.length; i++) {
             if (i == 0) {
@@ -58,6 +93,27 @@ class Machine {
                 }
             }
         }
+        if (sameRotors(previous)) {
+            checkFixedSettings();
+        } else {
+            compileStates();
+        }
+    }
+
+    /** Return true iff PREVIOUS, my rotors before the last insertRotors,
+     *  are copies of the same rotors, in the same slots, as those now
+     *  inserted. */
+    private boolean sameRotors(Rotor[] previous) {
+        if (previous == null || previous.length != myRotors.length) {
+            return false;
+        }
+        for (int i = 0; i < myRotors.length; i += 1) {
+            if (previous[i] == null
+                || !previous[i].name().equals(myRotors[i].name())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -67,41 +123,278 @@ class Machine {
         if (setting.length() != myRotors.length - 1) {
             throw new EnigmaException("not valid settings");
         }
+        _keystream = null;
         char[] settingChar = setting.toCharArray();
         for (int i = 1; i <= myRotors.length - 1; i++) {
             myRotors[i].set(settingChar[i - 1]);
         }
+        checkFixedSettings();
+    }
+
+    /** Set my rotors according to SETTING, which holds numRotors()-1
+     *  settings as indices in my alphabet, as for setRotors(String). */
+    void setRotors(int[] setting) {
+        if (setting.length != myRotors.length - 1) {
+            throw new EnigmaException("not valid settings");
+        }
+        _keystream = null;
+        for (int i = 1; i <= myRotors.length - 1; i++) {
+            myRotors[i].set(setting[i - 1]);
+        }
+        checkFixedSettings();
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        endKeystream();
+        if (!samePermutation(_plugboard, plugboard)) {
+            _generation += 1;
+        }
         _plugboard = plugboard;
     }
 
+    /** Return true iff P and Q are both non-null and permute my alphabet
+     *  alike. */
+    private boolean samePermutation(Permutation p, Permutation q) {
+        if (p == q) {
+            return p != null;
+        }
+        if (p == null || q == null) {
+            return false;
+        }
+        for (int c = 0; c < _alphabet.size(); c += 1) {
+            if (p.permute(c) != q.permute(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the conversions of each input at each of my next K
+     *  keystrokes: entry T * alphabet size + C is the conversion of
+     *  input C at keystroke T, where keystroke 0 is the next.  My state
+     *  is unchanged. */
+    int[] keystream(int k) {
+        endKeystream();
+        int size = _alphabet.size();
+        int[] settings = new int[myRotors.length];
+        for (int i = 0; i < myRotors.length; i += 1) {
+            settings[i] = myRotors[i].setting();
+        }
+        int[] result = new int[k * size];
+        for (int t = 0; t < k; t += 1) {
+            step();
+            for (int c = 0; c < size; c += 1) {
+                result[t * size + c] = signal(c);
+            }
+        }
+        for (int i = 1; i < myRotors.length; i += 1) {
+            myRotors[i].set(settings[i]);
+        }
+        return result;
+    }
+
+    /** Convert my next KEYSTREAM.length / alphabet size keystrokes by
+     *  looking them up in KEYSTREAM, which must be the result of
+     *  keystream for my current rotors, settings and plugboard.  My
+     *  rotors are not stepped meanwhile; they catch up once the
+     *  keystream runs out or when my rotors are next examined or
+     *  advanced.  KEYSTREAM is not changed, and may be shared. */
+    void setKeystream(int[] keystream) {
+        endKeystream();
+        _keystream = keystream;
+        _keystreamLength = keystream.length / _alphabet.size();
+        _keystreamAt = 0;
+    }
+
+    /** Stop using my keystream, if any, first stepping my rotors to the
+     *  settings they would have had without it. */
+    private void endKeystream() {
+        if (_keystream != null) {
+            _keystream = null;
+            for (int t = 0; t < _keystreamAt; t += 1) {
+                step();
+            }
+        }
+    }
+
+    /** If COMPILED, cache the result of converting each input at each
+     *  state of my rotating rotors as it is first computed, so that
+     *  revisiting a state costs one array load per character.  The
+     *  cache holds a row of alphabet size entries for each state, and
+     *  pays only while it stays in the processor's cache: past that,
+     *  filling a row for each new state costs more than the signal
+     *  path it replaces.  Machines whose cache would exceed
+     *  MAX_COMPILED_ENTRIES entries are therefore not compiled, and
+     *  step their rotors as usual.  The cache is allocated once, and
+     *  its rows as each state is first reached; it is kept as long as
+     *  the rotors inserted have the same number of states, as they do
+     *  for each settings line of a configuration.  Its contents are
+     *  invalidated, by advancing _generation, whenever different rotors
+     *  are inserted or my plugboard or the settings of my rotors that
+     *  do not rotate change, but not when the same rotors are inserted
+     *  again or only my rotating rotors are set.  */
+    void setCompiled(boolean compiled) {
+        _compiled = compiled;
+        compileStates();
+    }
+
+    /** Return true iff I am caching converted characters by rotor
+     *  state. */
+    boolean compiled() {
+        return _stateRows != null;
+    }
+
+    /** Set up (or drop) my state cache for the currently inserted
+     *  rotors. */
+    private void compileStates() {
+        int[][] rows = _stateRows;
+        int[] generations = _stateGenerations;
+        _stateRows = null;
+        _stateGenerations = null;
+        _fixedSettings = null;
+        _generation += 1;
+        if (!_compiled || myRotors == null) {
+            return;
+        }
+        int moving = 0;
+        for (Rotor rotor : myRotors) {
+            if (rotor.rotates()) {
+                moving += 1;
+            }
+        }
+        int size = _alphabet.size();
+        long states = 1;
+        _movingSlots = new int[moving];
+        for (int i = 0, k = 0; i < myRotors.length; i += 1) {
+            if (myRotors[i].rotates()) {
+                _movingSlots[k] = i;
+                k += 1;
+                states *= size;
+                if (states * size > MAX_COMPILED_ENTRIES) {
+                    return;
+                }
+            }
+        }
+        if (rows == null || rows.length != states) {
+            rows = new int[(int) states][];
+            generations = new int[(int) states];
+        }
+        _stateRows = rows;
+        _stateGenerations = generations;
+        _fixedSettings = new int[myRotors.length - moving];
+        for (int i = 0, k = 0; i < myRotors.length; i += 1) {
+            if (!myRotors[i].rotates()) {
+                _fixedSettings[k] = myRotors[i].setting();
+                k += 1;
+            }
+        }
+    }
+
+    /** Invalidate my cached conversions if the settings of my rotors
+     *  that do not rotate differ from those at which they were
+     *  cached. */
+    private void checkFixedSettings() {
+        if (_stateRows == null) {
+            return;
+        }
+        boolean changed = false;
+        for (int i = 0, k = 0; i < myRotors.length; i += 1) {
+            if (!myRotors[i].rotates()) {
+                int setting = myRotors[i].setting();
+                if (_fixedSettings[k] != setting) {
+                    _fixedSettings[k] = setting;
+                    changed = true;
+                }
+                k += 1;
+            }
+        }
+        if (changed) {
+            _generation += 1;
+        }
+    }
+
+    /** Return the number of rotor states whose cached conversions are
+     *  valid for my current rotors and plugboard, or 0 if I am not
+     *  compiled. */
+    int compiledStates() {
+        int result = 0;
+        if (_stateRows != null) {
+            for (int k = 0; k < _stateRows.length; k += 1) {
+                if (_stateRows[k] != null
+                    && _stateGenerations[k] == _generation) {
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the cached conversions for the current state of my
+     *  rotors, where -1 marks an input not yet converted in that
+     *  state. */
+    private int[] stateRow() {
+        int key = 0, size = _alphabet.size();
+        for (int slot : _movingSlots) {
+            Rotor rotor = myRotors[slot];
+            key = key * size + rotor.permutation().wrap(rotor.setting());
+        }
+        int[] row = _stateRows[key];
+        if (row == null) {
+            row = _stateRows[key] = new int[_alphabet.size()];
+            Arrays.fill(row, -1);
+            _stateGenerations[key] = _generation;
+        } else if (_stateGenerations[key] != _generation) {
+            Arrays.fill(row, -1);
+            _stateGenerations[key] = _generation;
+        }
+        return row;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        int lastRotor = numRotors() - 1;
-        boolean[] toAdvance = new boolean[numRotors()];
-        toAdvance[0] = false;
-        toAdvance[lastRotor] = true;
-        for (int i = lastRotor; i > 0; i--) {
-            if (myRotors[i].atNotch() && myRotors[i - 1].rotates()) {
-                toAdvance[i] = true;
-                toAdvance[i - 1] = true;
-            }
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.increment();
         }
-        for (int i = 0; i < toAdvance.length; i++) {
-            if (toAdvance[i]) {
-                myRotors[i].advance();
+        return convertIndex(c);
+    }
+
+    /** Returns the result of converting the input character C, as for
+     *  convert(C), without counting it in Metrics. */
+    private int convertIndex(int c) {
+        if (_keystream != null) {
+            if (_keystreamAt < _keystreamLength && c >= 0
+                && c < _alphabet.size()) {
+                int result = _keystream[_keystreamAt * _alphabet.size() + c];
+                _keystreamAt += 1;
+                return result;
             }
+            endKeystream();
         }
-        for (boolean x : toAdvance) {
-            x = false;
+        step();
+        if (_stateRows != null && c >= 0 && c < _alphabet.size()) {
+            int[] row = stateRow();
+            int result = row[c];
+            if (result < 0) {
+                result = row[c] = signal(c);
+            }
+            return result;
         }
+        return signal(c);
+    }
+
+    /** Returns the result of passing C through my plugboard, rotors and
+     *  reflector, and back, at the current rotor settings. */
+    private int signal(int c) {
         int updatedInt = _plugboard.permute(c);
-        for (int i = numRotors() - 1; i >= 0; i -= 1) {
+        for (int i = myRotors.length - 1; i >= 0; i -= 1) {
             updatedInt = myRotors[i].convertForward(updatedInt);
         }
         for (int i = 1; i < myRotors.length; i += 1) {
@@ -111,19 +404,259 @@ class Machine {
         return updatedInt;
     }
 
+    /** Advance my rotors by one keystroke.  My rightmost rotor always
+     *  advances; any other rotor advances if it rotates and the rotor
+     *  to its right is at a notch, or if it is itself at a notch and the
+     *  rotor to its left rotates.  All conditions refer to the settings
+     *  before the keystroke.  Rotors are visited left to right, so each
+     *  rotor's notch is examined before that rotor moves, and no scratch
+     *  state is needed. */
+    private void step() {
+        Rotor[] rotors = myRotors;
+        int last = rotors.length - 1;
+        boolean atNotch = false, leftRotates = false;
+        for (int i = 0; i <= last; i += 1) {
+            Rotor rotor = rotors[i];
+            boolean rotates = rotor.rotates();
+            boolean rightAtNotch = i < last && rotors[i + 1].atNotch();
+            if (i == last || (rotates && rightAtNotch)
+                || (atNotch && leftRotates)) {
+                rotor.advance();
+            }
+            atNotch = rightAtNotch;
+            leftRotates = rotates;
+        }
+    }
+
+    /** Advance my rotors to the settings they would have after converting
+     *  N more characters, without converting anything.  When my rotating
+     *  rotors form a single run ending at the rightmost slot, and no
+     *  rotor in that run but the leftmost has two notches at adjacent
+     *  settings, the result is computed from the notch positions in
+     *  time independent of N.  Otherwise, the rotors are stepped N
+     *  times. */
+    void advance(long n) {
+        if (n < 0) {
+            throw error("cannot advance by %d characters", n);
+        }
+        endKeystream();
+        int last = myRotors.length - 1, first = last;
+        while (first > 0 && myRotors[first - 1].rotates()) {
+            first -= 1;
+        }
+        boolean direct = myRotors[last].rotates();
+        for (int i = 0; i < myRotors.length; i += 1) {
+            if (i < first && myRotors[i].rotates()
+                || i > first && adjacentNotches(myRotors[i])) {
+                direct = false;
+            }
+        }
+        if (!direct) {
+            for (long k = 0; k < n; k += 1) {
+                step();
+            }
+            return;
+        }
+        int runLength = last - first + 1, size = _alphabet.size();
+        int[] posns = new int[runLength];
+        int[][] notchCounts = new int[runLength][];
+        for (int i = 0; i < runLength; i += 1) {
+            Rotor rotor = myRotors[first + i];
+            posns[i] = rotor.permutation().wrap(rotor.setting());
+            notchCounts[i] = new int[size + 1];
+            for (int p = 0; p < size; p += 1) {
+                notchCounts[i][p + 1] =
+                    notchCounts[i][p] + (rotor.notchAt(p) ? 1 : 0);
+            }
+        }
+        int k = runLength - 1;
+        long[][] steps = new long[runLength][runLength + 1];
+        long[][] carries = new long[runLength][runLength + 1];
+        for (int d = 0; d <= runLength; d += 1) {
+            steps[k][d] = Math.max(n - d, 0);
+            carries[k][d] = notchCount(notchCounts[k], posns[k], steps[k][d]);
+        }
+        for (int i = k - 1; i >= 0; i -= 1) {
+            boolean overlap = myRotors[first + i].notchAt(posns[i])
+                && myRotors[first + i + 1].notchAt(posns[i + 1]);
+            for (int d = 0; d <= i; d += 1) {
+                if (i == 0) {
+                    steps[i][d] = carries[i + 1][d];
+                } else if (n - d > 0) {
+                    steps[i][d] = stepsDriven(notchCounts[i], posns[i],
+                                              carries[i + 1][d],
+                                              carries[i + 1][d + 1],
+                                              overlap);
+                }
+                carries[i][d] = notchCount(notchCounts[i], posns[i],
+                                           steps[i][d]);
+            }
+        }
+        for (int i = 0; i < runLength; i += 1) {
+            myRotors[first + i].set((int) ((posns[i] + steps[i][0] % size)
+                                           % size));
+        }
+    }
+
+    /* The number of steps taken by a rotor in the run during N keystrokes
+     * is determined as follows.  The rightmost rotor steps at every
+     * keystroke.  Any other rotor steps when the rotor to its right is at
+     * a notch (a carry), and all but the leftmost also step when they are
+     * themselves at a notch (the double step).  Such a rotor never stays
+     * at a notch past one keystroke, so the number of keystrokes at which
+     * it is at a notch is the number of notches among the settings it
+     * passes through, and that is also the number of carries it passes
+     * to its left.  Without adjacent notches, a carry and a double step
+     * coincide only at the first keystroke, and a rotor can land on a
+     * notch only through a carry, which leaves it there at the end only
+     * if that carry came at the last keystroke. */
+
+    /** Return the number of steps taken by a rotor at setting POSN that
+     *  double steps and whose notches at settings below K number
+     *  COUNTS[K], during a positive number of keystrokes in which it
+     *  receives CARRIES carries, CARRIESBEFORE of them before the last
+     *  keystroke.  OVERLAP is true iff the rotor and its right neighbor
+     *  are both at notches at the first keystroke. */
+    private static long stepsDriven(int[] counts, int posn, long carries,
+                                    long carriesBefore, boolean overlap) {
+        int size = counts.length - 1;
+        long pure = carries - (overlap ? 1 : 0);
+        long result = 0;
+        if (pure > 0) {
+            int gain = size - counts[size];
+            long cycles = (pure - 1) / gain;
+            long rest = pure - cycles * gain;
+            int r = 1;
+            while (r - notchCount(counts, posn, r) < rest) {
+                r += 1;
+            }
+            result = cycles * size + r;
+        }
+        int landed = (int) ((posn + result % size) % size);
+        if (counts[landed + 1] > counts[landed]
+            && (result == 0 || carries == carriesBefore)) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Return the number of notches among the X consecutive settings
+     *  starting at POSN of a rotor whose notches at settings below K
+     *  number COUNTS[K]. */
+    private static long notchCount(int[] counts, int posn, long x) {
+        int size = counts.length - 1;
+        long cycles = x / size;
+        int rest = (int) (x % size);
+        long result = cycles * counts[size];
+        if (posn + rest <= size) {
+            return result + counts[posn + rest] - counts[posn];
+        }
+        return result + counts[size] - counts[posn]
+            + counts[posn + rest - size];
+    }
+
+    /** Return true iff ROTOR has notches at two adjacent settings
+     *  (including the last and first settings). */
+    private static boolean adjacentNotches(Rotor rotor) {
+        for (int p = 0; p < rotor.size(); p += 1) {
+            if (rotor.notchAt(p) && rotor.notchAt((p + 1) % rotor.size())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        char[] charArray = new char[msg.length()];
-        for (int i = 0; i < msg.length(); i++) {
-            char updatedChar = _alphabet.toChar(
-                    convert(_alphabet.toInt(msg.charAt(i))));
-            charArray[i] = updatedChar;
+        char[] chars = msg.toCharArray();
+        int len = convert(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, len);
+    }
+
+    /** Convert the LEN character indices IN[OFF .. OFF+LEN-1] in order,
+     *  storing the results in OUT[OFF .. OFF+LEN-1] and updating the
+     *  state of the rotors accordingly.  IN and OUT may be the same
+     *  array. */
+    void convert(int[] in, int[] out, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            out[i] = convertIndex(in[i]);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.add(len);
+        }
+    }
+
+    /** Convert the characters IN[OFF .. OFF+LEN-1] in order, skipping
+     *  blanks, and store the results contiguously in OUT starting at
+     *  OUTOFF, updating the state of the rotors accordingly.  Returns
+     *  the number of characters stored.  IN and OUT may be the same
+     *  array provided OUTOFF <= OFF. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = in[i];
+            if (ch != ' ') {
+                out[k] = _alphabet.toChar(convertIndex(_alphabet.toInt(ch)));
+                k += 1;
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.add(k - outOff);
+        }
+        return k - outOff;
+    }
+
+    /** Convert the remaining characters of IN, skipping blanks, and put
+     *  the results into OUT, updating the state of the rotors
+     *  accordingly.  Returns the number of characters put.  OUT must
+     *  have room for all of them. */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int n = convert(in.array(), in.arrayOffset() + in.position(),
+                            in.remaining(), out.array(),
+                            out.arrayOffset() + out.position());
+            in.position(in.limit());
+            out.position(out.position() + n);
+            return n;
+        }
+        int start = out.position();
+        while (in.hasRemaining()) {
+            char ch = in.get();
+            if (ch != ' ') {
+                out.put(_alphabet.toChar(convertIndex(_alphabet.toInt(ch))));
+            }
         }
-        return String.valueOf(charArray);
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.add(out.position() - start);
+        }
+        return out.position() - start;
     }
 
+    /** Convert the remaining bytes of IN in order, each taken as the
+     *  index of a character in my alphabet, and put the results into OUT
+     *  as bytes, updating the state of the rotors accordingly.  My
+     *  alphabet must have BYTE_SYMBOLS characters, so that every byte
+     *  is a character and every result a byte.  OUT must have room for
+     *  all of them, and may be IN itself. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        if (_alphabet.size() != BYTE_SYMBOLS) {
+            throw error("cannot convert bytes with an alphabet of %d "
+                        + "characters", _alphabet.size());
+        }
+        int n = in.remaining(), from = in.position(), to = out.position();
+        if (out.remaining() < n) {
+            throw error("no room for %d converted bytes", n);
+        }
+        for (int i = 0; i < n; i += 1) {
+            out.put(to + i, (byte) convertIndex(in.get(from + i) & 0xff));
+        }
+        in.position(from + n);
+        out.position(to + n);
+        if (Metrics.ENABLED) {
+            Metrics.CHARACTERS.add(n);
+        }
+    }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
@@ -137,9 +670,54 @@ class Machine {
     /** Collection of all possible rotors. */
     protected final Collection<Rotor> _allRotors;
 
+    /** My available rotors, by name. */
+    private final HashMap<String, Rotor> _rotorsByName;
+
     /** Rotor array of my rotors. */
     private Rotor[] myRotors;
 
     /** The permutation of my plugboard specifications. */
     private Permutation _plugboard;
+
+    /** Number of characters in an alphabet that converts bytes. */
+    static final int BYTE_SYMBOLS = 1 << Byte.SIZE;
+
+    /** Largest number of cached conversions, over all rotor states,
+     *  for which I will compile: 2 MiB of ints, about what a core's
+     *  share of the last-level cache holds.  The 26-letter machines
+     *  with three moving rotors need 26**4 entries, and fit. */
+    static final int MAX_COMPILED_ENTRIES = 1 << 19;
+
+    /** True iff conversions should be cached by rotor state. */
+    private boolean _compiled;
+
+    /** Slots of my rotating rotors, left to right. */
+    private int[] _movingSlots;
+
+    /** Cached conversions, indexed by the settings of my rotating rotors
+     *  read as a number in base alphabet size, or null if I am not
+     *  compiled. */
+    private int[][] _stateRows;
+
+    /** The value of _generation when each of _stateRows was last
+     *  cleared. */
+    private int[] _stateGenerations;
+
+    /** The settings, left to right, of my rotors that do not rotate at
+     *  which my cached conversions were computed, or null if I am not
+     *  compiled. */
+    private int[] _fixedSettings;
+
+    /** Incremented whenever my configuration changes, invalidating all
+     *  cached conversions. */
+    private int _generation;
+
+    /** The keystream in use (see setKeystream), or null if none. */
+    private int[] _keystream;
+
+    /** The number of keystrokes in _keystream. */
+    private int _keystreamLength;
+
+    /** The number of keystrokes converted from _keystream. */
+    private int _keystreamAt;
 }
@@ -0,0 +1,347 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Naman Patel
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Machine machine;
+
+    /** Set machine to a naval machine with rotors ROTORS (reflector
+     *  first), rotor settings SETTING and plugboard PLUGBOARD. */
+    private void setMachine(String[] rotors, String setting,
+                            String plugboard) {
+        machine = navalMachine(rotors.length, 3, "B", "Beta", "I", "II",
+                               "III", "IV", "V");
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+    }
+
+    /** Return the current settings of machine's rotors as letters. */
+    private String settings() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            result.append(UPPER.toChar(machine.rotor(i).setting()));
+        }
+        return result.toString();
+    }
+
+    /** Return a machine with an alphabet of WIDTH characters and a
+     *  reflector, a fixed rotor and MOVING moving rotors, inserted. */
+    private Machine wideMachine(int width, int moving) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < width; i += 1) {
+            chars.append((char) (0x100 + i));
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        int n = alpha.size();
+        int[] reflect = new int[n], fixed = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            reflect[i] = n - 1 - i;
+            fixed[i] = (11 * i + 7) % n;
+        }
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation(reflect, alpha)));
+        all.add(new FixedRotor("F", new Permutation(fixed, alpha)));
+        String[] names = new String[2 + moving];
+        names[0] = "R";
+        names[1] = "F";
+        for (int k = 0; k < moving; k += 1) {
+            int[] perm = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                perm[i] = (7 * i + 11 * k + 1) % n;
+            }
+            names[2 + k] = "M" + k;
+            all.add(new MovingRotor(names[2 + k], new Permutation(perm, alpha),
+                                    String.valueOf(alpha.toChar(k))));
+        }
+        Machine result = new Machine(alpha, names.length, moving, all);
+        result.insertRotors(names);
+        return result;
+    }
+
+    /** Return a machine with an alphabet of Machine.BYTE_SYMBOLS
+     *  characters and a reflector, a fixed rotor and three moving rotors,
+     *  inserted, set and with a plugboard. */
+    private Machine byteMachine() {
+        Machine result = wideMachine(Machine.BYTE_SYMBOLS, 3);
+        Alphabet alpha = result.alphabet();
+        result.setRotors(new int[] { 9, 0, 254, 250 });
+        result.setPlugboard(new Permutation(
+            "(" + alpha.toChar(0) + alpha.toChar(65) + ")", alpha));
+        return result;
+    }
+
+    /** Return the number of bytes this thread has allocated, or 0 if
+     *  that is not measured. */
+    private long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) bean)
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConvertMessage() {
+        setMachine(new String[] { "B", "Beta", "III", "IV", "I" }, "AXLE",
+                   "(HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine.convert("FROM his shoulder Hiawatha"
+                                     .toUpperCase()));
+    }
+
+    @Test
+    public void checkBulkConvert() {
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        String plugboard = "(HQ) (EX) (IP) (TR) (BY)";
+        setMachine(rotors, "AXLE", plugboard);
+        int[] codes = new int[100];
+        for (int i = 0; i < codes.length; i += 1) {
+            codes[i] = (i * 11) % 26;
+        }
+        int[] expected = new int[codes.length];
+        for (int i = 0; i < codes.length; i += 1) {
+            expected[i] = machine.convert(codes[i]);
+        }
+        setMachine(rotors, "AXLE", plugboard);
+        int[] out = new int[codes.length];
+        machine.convert(codes, out, 0, 50);
+        machine.convert(codes, out, 50, 50);
+        assertArrayEquals(expected, out);
+
+        setMachine(rotors, "AXLE", plugboard);
+        char[] text = "FROM HIS SHOULDER HIAWATHA".toCharArray();
+        int len = machine.convert(text, 0, text.length, text, 0);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(text, 0, len));
+
+        setMachine(rotors, "AXLE", plugboard);
+        CharBuffer result = CharBuffer.allocate(30);
+        machine.convert(CharBuffer.wrap("FROM HIS SHOULDER HIAWATHA"),
+                        result);
+        result.flip();
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", result.toString());
+    }
+
+    @Test
+    public void checkCopyIsIndependent() {
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        setMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        Machine other = machine.copy();
+        other.insertRotors(rotors);
+        other.setRotors("AAAA");
+        other.setPlugboard(new Permutation("", UPPER));
+        other.convert("HELLOWORLD");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkDoubleStep() {
+        setMachine(new String[] { "B", "Beta", "I", "II", "III" }, "AADU",
+                   "");
+        String[] expected = { "AADV", "AAEW", "ABFX", "ABFY" };
+        for (String setting : expected) {
+            machine.convert(0);
+            assertEquals(setting, settings());
+        }
+    }
+
+    @Test
+    public void checkCompiledMatchesPlain() {
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        setMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        int[] expected = new int[40000];
+        for (int i = 0; i < expected.length; i += 1) {
+            expected[i] = machine.convert((i * 7) % 26);
+        }
+        setMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        machine.setCompiled(true);
+        assertTrue(machine.compiled());
+        for (int i = 0; i < expected.length; i += 1) {
+            assertEquals(msg("compiled", "character %d", i),
+                         expected[i], machine.convert((i * 7) % 26));
+        }
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        for (int i = 0; i < 1000; i += 1) {
+            assertEquals(expected[i], machine.convert((i * 7) % 26));
+        }
+    }
+
+    @Test
+    public void checkAdvance() {
+        String[] rotors = { "B", "Beta", "I", "II", "III" };
+        setMachine(rotors, "AADU", "");
+        machine.advance(3);
+        assertEquals("ABFX", settings());
+        for (int n : new int[] { 0, 1, 2, 25, 26, 650, 676, 17000, 50000 }) {
+            setMachine(rotors, "AQEV", "");
+            for (int i = 0; i < n; i += 1) {
+                machine.convert(0);
+            }
+            String expected = settings();
+            setMachine(rotors, "AQEV", "");
+            machine.advance(n);
+            assertEquals(msg("advance", "%d characters", n),
+                         expected, settings());
+        }
+    }
+
+    @Test
+    public void checkConvertAllocationFree() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) bean;
+        setMachine(new String[] { "B", "Beta", "III", "IV", "I" }, "AXLE",
+                   "(HQ) (EX) (IP) (TR) (BY)");
+        int sum = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            sum += machine.convert(i % 26);
+        }
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5 && allocated > 0; round += 1) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 100000; i += 1) {
+                sum += machine.convert(i % 26);
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        assertEquals("bytes allocated by convert(int)", 0, allocated);
+        assertTrue(sum >= 0);
+    }
+
+    @Test
+    public void checkCompiledBudget() {
+        int[][] cases = {
+            { 26, 3 }, { 26, 4 }, { 90, 2 }, { 90, 3 }, { 256, 1 },
+            { 256, 2 }
+        };
+        for (int[] c : cases) {
+            Machine M = wideMachine(c[0], c[1]);
+            M.setCompiled(true);
+            long entries = (long) Math.pow(c[0], c[1] + 1);
+            assertEquals(msg("compiled", "width %d, %d moving", c[0], c[1]),
+                         entries <= Machine.MAX_COMPILED_ENTRIES,
+                         M.compiled());
+        }
+        assertFalse(wideMachine(26, 3).compiled());
+        Machine M = wideMachine(26, 3);
+        M.setCompiled(true);
+        assertTrue("naval machines fit", M.compiled());
+    }
+
+    @Test
+    public void checkCompiledStatesKept() {
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        String text = "FROMHISSHOULDERHIAWATHA";
+        Permutation plugboard =
+            new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER);
+        setMachine(rotors, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        machine.setCompiled(true);
+        String expected = machine.convert(text);
+        int states = machine.compiledStates();
+        assertEquals(text.length(), states);
+
+        long before = allocatedBytes();
+        machine.insertRotors(rotors);
+        machine.setRotors("AXLE");
+        machine.setPlugboard(plugboard);
+        assertTrue("bytes allocated by setting up the same rotors",
+                   allocatedBytes() - before < 1 << 12);
+        assertEquals(states, machine.compiledStates());
+        assertEquals(expected, machine.convert(text));
+
+        machine.setRotors("AAAA");
+        assertEquals(states, machine.compiledStates());
+        machine.setRotors("BXLE");
+        assertEquals(0, machine.compiledStates());
+        machine.setRotors("AXLE");
+        machine.convert(text);
+        machine.setPlugboard(new Permutation("(HQ)", UPPER));
+        assertEquals(0, machine.compiledStates());
+        machine.setRotors("AXLE");
+        String plain = machine.convert(text);
+        setMachine(rotors, "AXLE", "(HQ)");
+        assertEquals(machine.convert(text), plain);
+
+        String[] others = { "B", "Beta", "I", "II", "III" };
+        machine.setCompiled(true);
+        machine.convert(text);
+        before = allocatedBytes();
+        machine.insertRotors(others);
+        assertTrue("bytes allocated by inserting other rotors",
+                   allocatedBytes() - before < 1 << 12);
+        assertEquals(0, machine.compiledStates());
+        machine.setRotors("AXLE");
+        String converted = machine.convert(text);
+        assertEquals(text.length(), machine.compiledStates());
+        setMachine(others, "AXLE", "(HQ)");
+        assertEquals(machine.convert(text), converted);
+    }
+
+    @Test
+    public void checkConvertBytes() {
+        byte[] data = new byte[100000];
+        new Random(24).nextBytes(data);
+        int[] expected = new int[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            expected[i] = data[i] & 0xff;
+        }
+        byteMachine().convert(expected, expected, 0, expected.length);
+        Machine M = byteMachine();
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length),
+            out = ByteBuffer.allocateDirect(data.length);
+        in.put(data).flip();
+        in.limit(1000);
+        M.convert(in, out);
+        in.limit(data.length);
+        M.convert(in, out);
+        assertFalse(in.hasRemaining());
+        assertFalse(out.hasRemaining());
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(msg("bytes", "byte %d", i), expected[i],
+                         out.get(i) & 0xff);
+        }
+        ByteBuffer inPlace = ByteBuffer.wrap(data.clone());
+        M = byteMachine();
+        M.convert(inPlace, inPlace);
+        assertEquals(out.flip(), inPlace.flip());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkConvertBytesNeedsByteAlphabet() {
+        setMachine(new String[] { "B", "Beta", "III", "IV", "I" }, "AXLE",
+                   "");
+        machine.convert(ByteBuffer.allocate(1), ByteBuffer.allocate(1));
+    }
+
+}
@@ -1,15 +1,36 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -29,12 +50,89 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  Any ARGS before these that begin with "--"
+     *  are options:
+     *      --compiled   cache conversions by rotor state (see
+     *                   Machine.setCompiled).
+     *      --mmap       read the input file through memory-mapped
+     *                   windows rather than buffered reads.
+     *      --config-cache  reuse the configuration compiled into the
+     *                   file ARGS[0].cache, if it is up to date, and
+     *                   otherwise compile it there (see ConfigCache).
+     *      --parallel[=N]  convert settings groups on N worker threads
+     *                   (default: one per processor), each with its own
+     *                   machine, writing the results in input order.
+     *      --off-heap[=FILE]  keep the conversion tables of rotors with
+     *                   alphabets of up to 32767 characters off the Java
+     *                   heap, in direct buffers or, if FILE is given,
+     *                   mapped from FILE, which is reused if it holds
+     *                   the tables of the same rotors (see
+     *                   OffHeapTable).  When serving several
+     *                   configurations, those of the K-th (from 0) are
+     *                   mapped from FILE.K.
+     *      --settings-cache[=N]  keep the setups of up to N (default
+     *                   1024) recently used settings lines, so that a
+     *                   settings line seen again is applied without
+     *                   being parsed (see SettingsCache).
+     *      --keystream=K  with --settings-cache, also keep for each
+     *                   setup the conversions of every character at its
+     *                   first K keystrokes.
+     *      --lanes      convert the settings groups in batches, each
+     *                   group in its own lane of a LaneMachine, which
+     *                   steps its lanes together with the Vector API if
+     *                   the JVM runs with --add-modules
+     *                   jdk.incubator.vector.  Suits many short
+     *                   messages; ignored with --parallel.
+     *      --serve=ADDRESS  instead of converting a file, load each of
+     *                   the configuration files named by ARGS and serve
+     *                   conversion requests on ADDRESS, which is either a
+     *                   loopback TCP port number or the path of a Unix
+     *                   domain socket, until killed (see Server).  The
+     *                   address bound is reported on the standard error.
+     *      --search[=K]  instead of converting the input, treat its
+     *                   message lines as one ciphertext and search for
+     *                   the K (default 10) rotor orders and settings,
+     *                   without a plugboard, that decrypt it most
+     *                   plausibly (see KeySearch).  For each, best
+     *                   first, write its settings line and the
+     *                   decryption.  The search runs on the common
+     *                   fork-join pool, or on N threads if --parallel=N
+     *                   is given with N > 1.
+     *      --ngrams=FILE  score decryptions in a search by the frequency
+     *                   of their trigrams in the text of FILE, rather
+     *                   than by their index of coincidence.
+     *      --bytes=SETTINGS  instead of converting messages, set the
+     *                   machine up by the settings line SETTINGS and
+     *                   convert every byte of the input as one
+     *                   character, byte B standing for character number
+     *                   B of the alphabet, which must have 256
+     *                   characters.  The output has one byte per input
+     *                   byte, with no lines or groups.  With --mmap, an
+     *                   input and output file are converted through
+     *                   mapped windows of both.  Not with --serve or
+     *                   --search; --parallel and --lanes are ignored.
+     *      --checkpoint[=N]  after every N (default 64 Mi) bytes of
+     *                   input, record how far conversion has got in the
+     *                   file ARGS[2].checkpoint (see Checkpoint), which
+     *                   is removed when the run completes.  ARGS[1] and
+     *                   ARGS[2] must be given.  Messages are converted
+     *                   serially: --parallel and --lanes are ignored.
+     *                   Not with --serve, --search or --bytes.
+     *      --resume     as --checkpoint, but if ARGS[2].checkpoint
+     *                   exists, continue the run it records, keeping
+     *                   the output written up to it, so that the output
+     *                   is that of an uninterrupted run.
+     *  If the system property enigma.metrics is "true", metrics are kept
+     *  and reported on the standard error at the end (see Metrics). */
 
 
     public static void main(String... args) {
+        Metrics.start();
         try {
             new Main(args).process();
+            if (Metrics.ENABLED) {
+                Metrics.INSTANCE.print(System.err);
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -48,26 +146,227 @@ public final class Main {
 
 
     Main(String[] args) {
+        int first;
+        for (first = 0; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            setOption(args[first]);
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_resume && _checkpointInterval == 0) {
+            _checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        }
+        if (_checkpointInterval > 0
+            && (_serveAddress != null || _searchResults > 0
+                || _byteSettings != null)) {
+            throw error("checkpoints are only taken converting messages");
+        }
+        if (_serveAddress != null) {
+            if (_byteSettings != null) {
+                throw error("cannot serve in byte mode");
+            }
+            if (args.length < 1) {
+                throw error("no configuration files to serve");
+            }
+            _configNames = args;
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
+        _configName = args[0];
         _config = getInput(args[0]);
 
+        if (_byteSettings != null) {
+            if (_searchResults > 0) {
+                throw error("cannot search in byte mode");
+            }
+            openBytes(args);
+            return;
+        }
+
+        if (_checkpointInterval > 0) {
+            if (args.length < 3) {
+                throw error("checkpoints need input and output files");
+            }
+            _checkpointFile = Paths.get(args[2] + ".checkpoint");
+            if (_resume) {
+                _resumed = Checkpoint.read(_checkpointFile);
+            }
+        }
+
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = LineReader.open(args[1], _mapped);
+        } else {
+            _input = LineReader.standardInput(() -> _output.flush());
+        }
+
+        if (_resumed != null) {
+            _output = MessageWriter.resume(args[2], _resumed.outputOffset());
+        } else if (args.length > 2) {
+            _output = MessageWriter.open(args[2]);
         } else {
-            _input = new Scanner(System.in);
+            _output = MessageWriter.standardOutput();
         }
+    }
+
 
+
+    /** Open the input and output named by ARGS, as described in the
+     *  comment on main, as byte channels.  An output file is opened for
+     *  reading as well, so that it can be mapped. */
+    private void openBytes(String[] args) {
+        if (args.length > 1) {
+            _byteInput = openChannel(args[1], StandardOpenOption.READ);
+            _byteInputFile = true;
+        } else {
+            _byteInput = new FileInputStream(FileDescriptor.in).getChannel();
+        }
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _byteOutput = openChannel(args[2], StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+            _byteOutputFile = true;
         } else {
-            _output = System.out;
+            _byteOutput =
+                new FileOutputStream(FileDescriptor.out).getChannel();
+        }
+    }
+
+    /** Return a channel on the file named NAME opened with OPTIONS. */
+    private static FileChannel openChannel(String name,
+                                           OpenOption... options) {
+        try {
+            return FileChannel.open(Paths.get(name), options);
+        } catch (IOException | SecurityException excp) {
+            throw error("could not open %s", name);
         }
     }
 
+    /** A Main that serves requests with the configuration in the file
+     *  named CONFIGNAME, using the options given to OPTIONS. */
+    private Main(Main options, String configName) {
+        _compiled = options._compiled;
+        _configCache = options._configCache;
+        _offHeap = options._offHeap;
+        _tablesName = options._tablesName;
+        if (_tablesName != null && options._configNames.length > 1) {
+            _tablesName += "."
+                + Arrays.asList(options._configNames).indexOf(configName);
+        }
+        _configName = configName;
+        _config = getInput(configName);
+        _machine = readConfig();
+        _machine.setCompiled(_compiled);
+        _settingsCache = options.newSettingsCache();
+    }
 
+    /** A Main that converts the messages in INPUT with the configuration
+     *  read by CONFIG, writing the results to OUTPUT. */
+    private Main(Main config, LineReader input, MessageWriter output) {
+        _configName = config._configName;
+        _alphabet = config._alphabet;
+        mainnumRotors = config.mainnumRotors;
+        numPawls = config.numPawls;
+        allRotors = config.allRotors;
+        _settingsCache = config._settingsCache;
+        _input = input;
+        _output = output;
+    }
+
+    /** Record the command-line option OPTION. */
+    private void setOption(String option) {
+        switch (option) {
+        case "--compiled":
+            _compiled = true;
+            break;
+        case "--config-cache":
+            _configCache = true;
+            break;
+        case "--mmap":
+            _mapped = true;
+            break;
+        case "--lanes":
+            _lanes = true;
+            break;
+        case "--off-heap":
+            _offHeap = true;
+            break;
+        case "--settings-cache":
+            _settingsCacheSize = DEFAULT_SETTINGS_CACHE_SIZE;
+            break;
+        case "--parallel":
+            _threads = Runtime.getRuntime().availableProcessors();
+            break;
+        case "--search":
+            _searchResults = DEFAULT_SEARCH_RESULTS;
+            break;
+        case "--checkpoint":
+            _checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+            break;
+        case "--resume":
+            _resume = true;
+            break;
+        default:
+            if (option.startsWith("--parallel=")) {
+                _threads = count(option, "thread count");
+                break;
+            }
+            if (option.startsWith("--search=")) {
+                _searchResults = count(option, "result count");
+                break;
+            }
+            if (option.startsWith("--settings-cache=")) {
+                _settingsCacheSize = count(option, "cache size");
+                break;
+            }
+            if (option.startsWith("--checkpoint=")) {
+                _checkpointInterval = count(option, "checkpoint interval");
+                break;
+            }
+            if (option.startsWith("--keystream=")) {
+                _keystreamLength = count(option, "keystream length");
+                break;
+            }
+            if (option.startsWith("--off-heap=")) {
+                _offHeap = true;
+                _tablesName = option.substring(11);
+                break;
+            }
+            if (option.startsWith("--ngrams=")) {
+                _ngramsName = option.substring(9);
+                break;
+            }
+            if (option.startsWith("--bytes=")) {
+                _byteSettings = option.substring(8);
+                break;
+            }
+            if (option.startsWith("--serve=")) {
+                _serveAddress = option.substring(8);
+                break;
+            }
+            throw error("unknown option %s", option);
+        }
+    }
+
+
+
+    /** Return the positive number following the '=' in OPTION, which
+     *  is described as WHAT in any error message. */
+    private static int count(String option, String what) {
+        int result;
+        try {
+            result = Integer.parseInt(
+                option.substring(option.indexOf('=') + 1));
+        } catch (NumberFormatException excp) {
+            result = 0;
+        }
+        if (result < 1) {
+            throw error("bad %s in %s", what, option);
+        }
+        return result;
+    }
 
     /** Return a Scanner reading from the file named NAME. */
 
@@ -82,84 +381,753 @@ public final class Main {
 
 
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and apply it to the messages in _input, sending the
+     *  results to _output.  Each settings line is applied when it is
+     *  read and each message line is written as soon as it is converted,
+     *  so memory use does not depend on the size of the input. */
 
+    void process() {
+        if (_serveAddress != null) {
+            serve();
+            return;
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            Machine myMachine = readConfig();
+            myMachine.setCompiled(_compiled);
+            _settingsCache = newSettingsCache();
+            if (_byteSettings != null) {
+                convertBytes(myMachine);
+                return;
+            }
+            if (_searchResults > 0) {
+                search(myMachine);
+                return;
+            }
+            convertAll(myMachine);
+        } finally {
+            if (_output != null) {
+                try {
+                    _output.close();
+                } finally {
+                    _input.close();
+                }
+            } else {
+                try {
+                    if (_byteOutputFile) {
+                        close(_byteOutput);
+                    }
+                } finally {
+                    if (_byteInputFile) {
+                        close(_byteInput);
+                    }
+                }
+            }
+            if (Metrics.ENABLED) {
+                Metrics.PROCESS.recordSince(start);
+            }
+        }
+    }
 
-    private PrintStream getOutput(String name) {
+    /** Search for the _searchResults best keys under which the rotors
+     *  available to M decrypt the message lines in _input, and write
+     *  each with its decryption to _output. */
+    private void search(Machine M) {
+        StringBuilder ciphertext = new StringBuilder();
+        for (CharBuffer line = _input.readLine(); line != null;
+             line = _input.readLine()) {
+            if (!isSettings(line)) {
+                for (int i = 0; i < line.remaining(); i += 1) {
+                    if (line.charAt(i) != ' ') {
+                        ciphertext.append(line.charAt(i));
+                    }
+                }
+            }
+        }
+        KeySearch.Scorer scorer;
+        if (_ngramsName == null) {
+            scorer = KeySearch.indexOfCoincidence(_alphabet.size());
+        } else {
+            try {
+                scorer = KeySearch.ngrams(_alphabet,
+                                          Files.readString(
+                                              Paths.get(_ngramsName)),
+                                          SEARCH_NGRAM_LENGTH);
+            } catch (IOException excp) {
+                throw error("could not read %s", _ngramsName);
+            }
+        }
+        Permutation plugboard = new Permutation("", _alphabet);
+        KeySearch search = new KeySearch(M, plugboard, scorer,
+                                         _searchResults, SEARCH_PREFIX);
+        ForkJoinPool pool = _threads > 1 ? new ForkJoinPool(_threads)
+            : ForkJoinPool.commonPool();
+        List<KeySearch.Candidate> best;
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
-            throw error("could not open %s", name);
+            best = search.search(ciphertext.toString(), pool);
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdownNow();
+            }
+        }
+        for (KeySearch.Candidate candidate : best) {
+            candidate.setUp(M);
+            String plaintext = M.convert(ciphertext.toString());
+            _output.writeLine(candidate.toString());
+            _output.writeMessageLine(plaintext.toCharArray(), 0,
+                                     plaintext.length());
         }
     }
 
+    /** Load each of the configurations in _configNames and serve requests
+     *  to convert messages with them on _serveAddress. */
+    private void serve() {
+        newServer().serve(_serveAddress);
+    }
 
+    /** Return a server of conversions with each of the configurations in
+     *  _configNames. */
+    Server newServer() {
+        return newServer(Server.TIMEOUT);
+    }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+    /** Return a server of conversions with each of the configurations in
+     *  _configNames that drops a client that has not sent a request body
+     *  or accepted a response within TIMEOUT milliseconds. */
+    Server newServer(long timeout) {
+        LinkedHashMap<String, Main> configs = new LinkedHashMap<>();
+        for (String name : _configNames) {
+            configs.put(name, new Main(this, name));
+        }
+        return new Server(configs, timeout);
+    }
 
-    private void process() {
-        Machine myMachine = readConfig();
-        int group = 0;
-        int entryPoint = 1;
+    /** Return a new machine with the configuration I serve. */
+    Machine newMachine() {
+        return _machine.copy();
+    }
 
-        String nextItem = _input.nextLine();
-        while (entryPoint == 1) {
-            String rotorLine = nextItem;
-            if (!rotorLine.startsWith("*")) {
-                throw new EnigmaException(
-                        "invalid input file, invalid rotor settings");
+    /** Convert the messages in the remaining bytes of REQUEST, which are
+     *  in the format of an input file encoded in UTF-8, with M, which
+     *  must be one of my new machines, and write the results to
+     *  OUTPUT. */
+    void convert(Machine M, ByteBuffer request, MessageWriter output) {
+        Main session =
+            new Main(this, new LineReader(request, StandardCharsets.UTF_8),
+                     output);
+        try {
+            session.convertAll(M);
+        } finally {
+            output.flush();
+        }
+    }
+
+    /** Set M up according to _byteSettings and apply it to every byte of
+     *  _byteInput, as the index of a character, writing the results to
+     *  _byteOutput.  If both are files and _mapped, the bytes are
+     *  converted from mapped windows of one file to those of the other;
+     *  otherwise, in place in a direct buffer. */
+    private void convertBytes(Machine M) {
+        if (_alphabet.size() != Machine.BYTE_SYMBOLS) {
+            throw error("byte mode needs an alphabet of %d characters",
+                        Machine.BYTE_SYMBOLS);
+        }
+        if (!isSettings(CharBuffer.wrap(_byteSettings))) {
+            throw new EnigmaException(
+                    "invalid input file, invalid rotor settings");
+        }
+        setUp(M, _byteSettings);
+        try {
+            if (_mapped && _byteInput instanceof FileChannel
+                && _byteOutput instanceof FileChannel) {
+                FileChannel in = (FileChannel) _byteInput,
+                    out = (FileChannel) _byteOutput;
+                long size = in.size();
+                for (long at = 0; at < size; at += BYTE_WINDOW_SIZE) {
+                    long len = Math.min(BYTE_WINDOW_SIZE, size - at);
+                    convertBytes(M, in.map(FileChannel.MapMode.READ_ONLY,
+                                           at, len),
+                                 out.map(FileChannel.MapMode.READ_WRITE,
+                                         at, len));
+                }
+                return;
             }
-            ArrayList<String> allLines = new ArrayList<>();
-            allLines.add(rotorLine);
-            if (!_input.hasNextLine()) {
-                throw new EnigmaException(
-                        "invalid input file, no message line");
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+            while (_byteInput.read(bytes) >= 0) {
+                bytes.flip();
+                convertBytes(M, bytes, bytes);
+                bytes.flip();
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                while (bytes.hasRemaining()) {
+                    _byteOutput.write(bytes);
+                }
+                if (Metrics.ENABLED) {
+                    Metrics.WRITE.recordSince(start);
+                }
+                bytes.clear();
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the remaining bytes of IN with M into OUT, as for
+     *  Machine.convert. */
+    private static void convertBytes(Machine M, ByteBuffer in,
+                                     ByteBuffer out) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        M.convert(in, out);
+        if (Metrics.ENABLED) {
+            Metrics.CONVERT.recordSince(start);
+        }
+    }
+
+    /** Close CHANNEL. */
+    private static void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Apply M to all the messages in _input, writing the results to
+     *  _output, or, if _resumed is not null, to those following it. */
+    private void convertAll(Machine M) {
+        if (_resumed != null) {
+            _input.seek(_resumed.inputOffset());
+            processSerially(M, null);
+        } else {
+            convertFromStart(M);
+        }
+        if (_checkpointFile != null) {
+            _output.flush();
+            try {
+                Files.deleteIfExists(_checkpointFile);
+            } catch (IOException excp) {
+                throw error("could not remove %s", _checkpointFile);
+            }
+        }
+    }
+
+    /** Apply M to all the messages in _input, from its start, writing
+     *  the results to _output. */
+    private void convertFromStart(Machine M) {
+        CharBuffer line = _input.readLine();
+        if (line == null) {
+            throw new EnigmaException(
+                    "invalid input file, no rotor settings");
+        }
+        if (!isSettings(line)) {
+            throw new EnigmaException(
+                    "invalid input file, invalid rotor settings");
+        }
+        boolean serial = _threads == 1 || _checkpointFile != null;
+        LaneMachine lanes = _lanes && serial && _checkpointFile == null
+            ? LaneMachine.create(M) : null;
+        if (!serial) {
+            processInParallel(M, line.toString());
+        } else if (lanes != null) {
+            processInLanes(M, lanes, line.toString());
+        } else {
+            processSerially(M, line.toString());
+        }
+    }
+
+    /** Apply M to the messages in _input that follow the settings line
+     *  SETTINGS, one line at a time, or, if _resumed is not null, that
+     *  follow the line at which it was taken, continuing its settings
+     *  group.  If _checkpointFile is not null, a checkpoint is taken
+     *  after every _checkpointInterval bytes of input. */
+    private void processSerially(Machine M, String settings) {
+        CharBuffer converted = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+        boolean resuming = _resumed != null;
+        long nextCheckpoint = _input.position() + _checkpointInterval;
+        if (resuming) {
+            settings = _resumed.settings();
+            setUp(M, settings);
+            M.setRotors(_resumed.rotorSettings());
+        }
+        while (settings != null) {
+            CharBuffer line = _input.readLine();
+            String group = settings;
+            if (resuming) {
+                resuming = false;
             } else {
-                while (_input.hasNextLine()) {
-                    nextItem = _input.nextLine();
-                    if (nextItem.startsWith("*")) {
-                        entryPoint = 1;
-                        break;
+                if (line == null) {
+                    throw new EnigmaException(
+                            "invalid input file, no message line");
+                }
+                setUp(M, settings);
+            }
+            settings = null;
+            for (; line != null; line = _input.readLine()) {
+                if (isSettings(line)) {
+                    settings = line.toString();
+                    break;
+                }
+                if (line.remaining() > converted.capacity()) {
+                    converted = CharBuffer.allocate(
+                            Math.max(line.remaining(),
+                                     2 * converted.capacity()));
+                }
+                converted.clear();
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                int len = M.convert(line, converted);
+                if (Metrics.ENABLED) {
+                    long end = System.nanoTime();
+                    Metrics.CONVERT.record(end - start);
+                    start = end;
+                }
+                _output.writeMessageLine(converted.array(), 0, len);
+                if (Metrics.ENABLED) {
+                    Metrics.WRITE.recordSince(start);
+                    Metrics.MESSAGES.increment();
+                }
+                if (_checkpointFile != null
+                    && _input.position() >= nextCheckpoint) {
+                    checkpoint(M, group);
+                    nextCheckpoint = _input.position() + _checkpointInterval;
+                }
+            }
+        }
+    }
+
+    /** Write all output so far and record in _checkpointFile that M is
+     *  converting the settings group with settings line SETTINGS, having
+     *  read the input before the next line. */
+    private void checkpoint(Machine M, String settings) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        _output.flush();
+        Checkpoint.of(M, settings, _input.position(), _output.position())
+            .write(_checkpointFile);
+        if (Metrics.ENABLED) {
+            Metrics.CHECKPOINT.recordSince(start);
+        }
+    }
+
+    /** Apply M to the messages in _input that follow the settings line
+     *  SETTINGS, converting the settings groups in batches of at least
+     *  MAX_LANE_BATCH_CHARS characters with LANES, one group per lane,
+     *  and writing the results in input order.  M is set up for each
+     *  group in turn, and the group is added to LANES in that state.  A
+     *  group of more than MAX_LANE_GROUP_CHARS characters would hold up
+     *  its batch in one lane, and is instead converted by M itself. */
+    private void processInLanes(Machine M, LaneMachine lanes,
+                                String settings) {
+        ArrayList<LaneGroup> batch = new ArrayList<>();
+        long batchChars = 0;
+        try {
+            while (settings != null) {
+                CharBuffer line = _input.readLine();
+                if (line == null) {
+                    throw new EnigmaException(
+                            "invalid input file, no message line");
+                }
+                setUp(M, settings);
+                settings = null;
+                LaneGroup group = new LaneGroup();
+                EnigmaException failure = null;
+                try {
+                    for (; line != null; line = _input.readLine()) {
+                        if (isSettings(line)) {
+                            settings = line.toString();
+                            break;
+                        }
+                        group.add(line, _alphabet);
                     }
+                } catch (EnigmaException excp) {
+                    failure = excp;
+                }
+                if (group.length > MAX_LANE_GROUP_CHARS) {
+                    convertLanes(lanes, batch);
+                    batchChars = 0;
+                    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                    M.convert(group.chars, group.chars, 0, group.length);
+                    if (Metrics.ENABLED) {
+                        Metrics.CONVERT.recordSince(start);
+                    }
+                    batch.add(group);
+                } else {
+                    if (group.chars.length > group.length) {
+                        group.chars = Arrays.copyOf(group.chars,
+                                                    group.length);
+                    }
+                    lanes.add(M, group.chars);
+                    batch.add(group);
+                    batchChars += group.length;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (batchChars >= MAX_LANE_BATCH_CHARS) {
+                    convertLanes(lanes, batch);
+                    batchChars = 0;
+                }
+            }
+        } finally {
+            convertLanes(lanes, batch);
+        }
+    }
+
+    /** Convert the groups added to LANES, which are the last of those in
+     *  BATCH, and write all of BATCH to _output, emptying it. */
+    private void convertLanes(LaneMachine lanes, ArrayList<LaneGroup> batch) {
+        if (lanes.pending() > 0) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            lanes.convertAll();
+            if (Metrics.ENABLED) {
+                Metrics.CONVERT.recordSince(start);
+            }
+        }
+        ArrayList<LaneGroup> groups = new ArrayList<>(batch);
+        batch.clear();
+        for (LaneGroup group : groups) {
+            group.write(_output, _alphabet);
+        }
+    }
+
+    /** The message lines of a settings group converted in lanes, with
+     *  blanks removed, as character indices. */
+    private static final class LaneGroup {
+
+        /** Append LINE, whose characters must be blanks or in ALPHABET,
+         *  to me. */
+        void add(CharBuffer line, Alphabet alphabet) {
+            if (length + line.remaining() > chars.length) {
+                chars = Arrays.copyOf(chars,
+                                      Math.max(length + line.remaining(),
+                                               2 * chars.length));
+            }
+            for (int i = line.position(); i < line.limit(); i += 1) {
+                char ch = line.get(i);
+                if (ch != ' ') {
+                    chars[length] = alphabet.toInt(ch);
+                    length += 1;
+                }
+            }
+            if (lines == ends.length) {
+                ends = Arrays.copyOf(ends, 2 * lines);
+            }
+            ends[lines] = length;
+            lines += 1;
+        }
+
+        /** Write my lines, as characters of ALPHABET, to OUTPUT.  The
+         *  lines added to a LaneMachine are those it converted. */
+        void write(MessageWriter output, Alphabet alphabet) {
+            char[] line = new char[0];
+            for (int k = 0, start = 0; k < lines; k += 1) {
+                int len = ends[k] - start;
+                if (line.length < len) {
+                    line = new char[len];
+                }
+                for (int i = 0; i < len; i += 1) {
+                    line[i] = alphabet.toChar(chars[start + i]);
+                }
+                long time = Metrics.ENABLED ? System.nanoTime() : 0;
+                output.writeMessageLine(line, 0, len);
+                if (Metrics.ENABLED) {
+                    Metrics.WRITE.recordSince(time);
+                    Metrics.MESSAGES.increment();
+                }
+                start = ends[k];
+            }
+        }
+
+        /** My characters, in CHARS[0 .. LENGTH-1]. */
+        private int[] chars = new int[0];
+
+        /** The number of my characters. */
+        private int length;
+
+        /** ENDS[K] is the number of my characters in lines 0 .. K, for
+         *  0 <= K < LINES. */
+        private int[] ends = new int[1];
+
+        /** The number of my lines. */
+        private int lines;
+    }
+
+    /** Apply copies of M to the messages in _input that follow the
+     *  settings line SETTINGS, converting them on _threads worker
+     *  threads and writing the results in input order.  Each settings
+     *  group is read in segments of whole lines that stop once they
+     *  reach MAX_SEGMENT_CHARS characters, each converted on one thread
+     *  by a machine advanced to the segment's start (see
+     *  Machine.advance), so that a long group is neither held in memory
+     *  whole nor kept from the output until it ends.  Segments of at
+     *  least 2 * MIN_CHUNK_CHARS characters are instead split into
+     *  chunks that are converted in parallel in the same way.  At most
+     *  MAX_PENDING_GROUPS segments per thread, or MAX_PENDING_CHARS
+     *  characters if that is more than one segment, are held in memory
+     *  at a time. */
+    private void processInParallel(Machine M, String settings) {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(M::copy);
+        ArrayDeque<PendingGroup> pending = new ArrayDeque<>();
+        long pendingChars = 0;
+        try {
+            while (settings != null) {
+                CharBuffer line = _input.readLine();
+                if (line == null) {
+                    while (!pending.isEmpty()) {
+                        writeGroup(pending.remove());
+                    }
+                    throw new EnigmaException(
+                            "invalid input file, no message line");
+                }
+                String groupSettings = settings;
+                settings = null;
+                ArrayList<String> lines = new ArrayList<>();
+                long chars = 0, offset = 0, letters = 0;
+                for (; ; line = _input.readLine()) {
+                    boolean end = line == null || isSettings(line);
+                    if (end || chars >= MAX_SEGMENT_CHARS) {
+                        pending.add(submitSegment(workers, machines,
+                                                  groupSettings, offset,
+                                                  lines, chars));
+                        pendingChars += chars;
+                        while (pending.size() > MAX_PENDING_GROUPS * _threads
+                               || pending.size() > 1
+                                  && pendingChars > MAX_PENDING_CHARS) {
+                            pendingChars -= writeGroup(pending.remove());
+                        }
+                        if (end) {
+                            settings = line == null ? null : line.toString();
+                            break;
+                        }
+                        lines = new ArrayList<>();
+                        chars = 0;
+                        offset += letters;
+                        letters = 0;
+                    }
+                    lines.add(line.toString());
+                    chars += line.remaining();
+                    for (int i = line.position(); i < line.limit(); i += 1) {
+                        if (line.get(i) != ' ') {
+                            letters += 1;
+                        }
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeGroup(pending.remove());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
 
-                    nextItem = nextItem.replace(" ", "");
-                    allLines.add(nextItem);
-                    entryPoint = 0;
+    /** Submit to WORKERS, using MACHINES, the conversion of LINES, which
+     *  hold CHARS characters and follow the first OFFSET characters
+     *  converted after settings line SETTINGS.  Returns the segment
+     *  submitted. */
+    private PendingGroup submitSegment(ExecutorService workers,
+                                       ThreadLocal<Machine> machines,
+                                       String settings, long offset,
+                                       List<String> lines, long chars) {
+        PendingGroup group = new PendingGroup(chars);
+        if (chars < 2 * MIN_CHUNK_CHARS) {
+            group.parts.add(workers.submit(
+                () -> convertGroup(machines.get(), settings, offset,
+                                   lines)));
+        } else {
+            submitChunks(group, workers, machines, settings, offset, lines);
+        }
+        return group;
+    }
+
+    /** Set M according to SETTINGS, advance it by OFFSET characters, and
+     *  return the conversions of each of LINES, in order. */
+    private char[][] convertGroup(Machine M, String settings, long offset,
+                                  List<String> lines) {
+        setUp(M, settings);
+        M.advance(offset);
+        char[][] result = new char[lines.size()][];
+        for (int i = 0; i < result.length; i += 1) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            char[] chars = lines.get(i).toCharArray();
+            int len = M.convert(chars, 0, chars.length, chars, 0);
+            if (Metrics.ENABLED) {
+                Metrics.CONVERT.recordSince(start);
+            }
+            result[i] = len == chars.length ? chars
+                : Arrays.copyOf(chars, len);
+        }
+        return result;
+    }
+
+    /** Add to GROUP the conversions by WORKERS, using MACHINES, of
+     *  chunks of LINES, which follow the first OFFSET characters
+     *  converted after settings line SETTINGS.  The chunks together
+     *  convert the lines in place, and GROUP's lines are set to them. */
+    private void submitChunks(PendingGroup group, ExecutorService workers,
+                              ThreadLocal<Machine> machines,
+                              String settings, long offset,
+                              List<String> lines) {
+        char[][] stripped = new char[lines.size()][];
+        long[] starts = new long[lines.size() + 1];
+        for (int i = 0; i < stripped.length; i += 1) {
+            String line = lines.get(i);
+            stripped[i] = new char[line.length()];
+            int len = 0;
+            for (int j = 0; j < line.length(); j += 1) {
+                if (line.charAt(j) != ' ') {
+                    stripped[i][len] = line.charAt(j);
+                    len += 1;
                 }
             }
-            settingLineGroup.put(group, allLines);
-            group = group + 1;
-        }
-
-        for (Map.Entry<Integer, ArrayList<String>>
-                groupEntry : settingLineGroup.entrySet()) {
-            ArrayList<String> lines = groupEntry.getValue();
-            String rotorSettings = lines.get(0);
-            setUp(myMachine, rotorSettings);
-            for (int i = 1; i < lines.size(); i++) {
-                StringBuilder toreturn = new StringBuilder();
-                for (int j = 0; j < lines.get(i).length(); j++) {
-                    String currentLine = lines.get(i);
-                    char currentChar = currentLine.charAt(j);
-                    int converted = myMachine.convert(
-                            _alphabet.toInt(currentChar));
-                    toreturn.append(_alphabet.toChar(converted));
+            if (len < stripped[i].length) {
+                stripped[i] = Arrays.copyOf(stripped[i], len);
+            }
+            starts[i + 1] = starts[i] + len;
+        }
+        long total = starts[stripped.length];
+        long chunk = Math.max(MIN_CHUNK_CHARS,
+                              (total + _threads - 1) / _threads);
+        for (long from = 0; from < total; from += chunk) {
+            long start = from, end = Math.min(total, from + chunk);
+            group.parts.add(workers.submit(
+                () -> convertChunk(machines.get(), settings, offset,
+                                   stripped, starts, start, end)));
+        }
+        group.lines = stripped;
+    }
+
+    /** Set M according to SETTINGS and convert characters START through
+     *  END-1 of LINES in place, where STARTS[K] is the number of
+     *  characters in LINES[0 .. K-1], as if all of LINES were converted
+     *  in order after OFFSET other characters.  Returns null. */
+    private char[][] convertChunk(Machine M, String settings, long offset,
+                                  char[][] lines, long[] starts,
+                                  long start, long end) {
+        setUp(M, settings);
+        long time = Metrics.ENABLED ? System.nanoTime() : 0;
+        M.advance(offset + start);
+        for (int i = 0; i < lines.length && starts[i] < end; i += 1) {
+            if (starts[i + 1] > start) {
+                int from = (int) Math.max(0, start - starts[i]);
+                int to = (int) Math.min(lines[i].length, end - starts[i]);
+                M.convert(lines[i], from, to - from, lines[i], from);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.CONVERT.recordSince(time);
+        }
+        return null;
+    }
+
+    /** Wait for GROUP to be converted and write its lines to _output.
+     *  Returns the number of input characters in GROUP. */
+    private long writeGroup(PendingGroup group) {
+        try {
+            char[][] lines = group.lines;
+            for (Future<char[][]> part : group.parts) {
+                char[][] result = part.get();
+                if (result != null) {
+                    lines = result;
                 }
-                if (toreturn.toString().equals("")) {
-                    _output.println();
+            }
+            for (char[] line : lines) {
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                _output.writeMessageLine(line, 0, line.length);
+                if (Metrics.ENABLED) {
+                    Metrics.WRITE.recordSince(start);
+                    Metrics.MESSAGES.increment();
                 }
-                printMessageLine(toreturn.toString());
             }
+            return group.chars;
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            if (excp.getCause() instanceof Error) {
+                throw (Error) excp.getCause();
+            }
+            throw error("conversion failed: %s", excp.getCause());
         }
+    }
+
+    /** A segment of a settings group submitted for conversion. */
+    private static final class PendingGroup {
+        /** A segment of CHARS input characters. */
+        PendingGroup(long chars) {
+            this.chars = chars;
+        }
+
+        /** The tasks converting the segment, in order.  Each yields
+         *  either the converted lines of the whole segment or null. */
+        private final ArrayList<Future<char[][]>> parts = new ArrayList<>();
 
+        /** The converted lines of the segment, if no part yields them. */
+        private char[][] lines;
+
+        /** The number of characters in the segment's input. */
+        private final long chars;
+    }
+
+    /** Return true iff LINE is a settings line. */
+    private static boolean isSettings(CharBuffer line) {
+        return line.hasRemaining() && line.charAt(0) == '*';
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, with its rotor tables off the heap if so
+     *  requested, and close _config. */
 
     private Machine readConfig() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        OffHeapTable.Source tables = _tablesName != null
+            ? OffHeapTable.mapped(Paths.get(_tablesName))
+            : _offHeap ? OffHeapTable.direct() : null;
+        try {
+            return readConfigFile(tables);
+        } finally {
+            try {
+                if (tables != null) {
+                    tables.finish();
+                }
+            } finally {
+                _config.close();
+                if (Metrics.ENABLED) {
+                    Metrics.READ_CONFIG.recordSince(start);
+                }
+            }
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of
+     *  configuration file _config, or from its cache, whose rotors take
+     *  their conversion tables from TABLES, if it is not null. */
+    private Machine readConfigFile(OffHeapTable.Source tables) {
+        Path config = Paths.get(_configName),
+            cache = Paths.get(_configName + ".cache");
+        if (_configCache) {
+            Machine cached = ConfigCache.load(config, cache, tables);
+            if (cached != null) {
+                _alphabet = cached.alphabet();
+                mainnumRotors = cached.numRotors();
+                numPawls = cached.numPawls();
+                allRotors = cached._allRotors;
+                return cached;
+            }
+        }
+        Machine result = parseConfig(tables);
+        if (_configCache) {
+            ConfigCache.save(result, config, cache);
+        }
+        return result;
+    }
+
+    /** Return an Enigma machine configured by parsing the contents of
+     *  configuration file _config, whose rotors take their conversion
+     *  tables from TABLES, if it is not null. */
+
+    private Machine parseConfig(OffHeapTable.Source tables) {
         try {
             String myAlphabet = _config.next();
             if (myAlphabet.contains("*") || myAlphabet.contains("(")
@@ -189,7 +1157,7 @@ public final class Main {
                     rotorName = oneCycle;
                 }
                 typeAndnotch = _config.next();
-                allRotors.add(readRotor());
+                allRotors.add(readRotor(tables));
             }
             return new Machine(_alphabet, mainnumRotors, numPawls, allRotors);
         } catch (NoSuchElementException excp) {
@@ -198,9 +1166,10 @@ public final class Main {
     }
 
 
-    /** Return a rotor, reading its description from _config. */
+    /** Return a rotor, reading its description from _config, that takes
+     *  its conversion tables from TABLES, if it is not null. */
 
-    private Rotor readRotor() {
+    private Rotor readRotor(OffHeapTable.Source tables) {
         try {
             oneCycle = _config.next();
             String y = "";
@@ -218,12 +1187,12 @@ public final class Main {
             String x = y.substring(1);
             Permutation myPermutation = new Permutation(x, _alphabet);
             if (typeAndnotch.startsWith("N")) {
-                return new FixedRotor(rotorName, myPermutation);
+                return new FixedRotor(rotorName, myPermutation, tables);
             } else if (typeAndnotch.startsWith("M")) {
                 return new MovingRotor(rotorName, myPermutation,
-                        typeAndnotch.substring(1));
+                        typeAndnotch.substring(1), tables);
             } else {
-                return new Reflector(rotorName, myPermutation);
+                return new Reflector(rotorName, myPermutation, tables);
             }
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
@@ -233,6 +1202,39 @@ public final class Main {
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            cachedSetUp(M, settings);
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.SET_UP.recordSince(start);
+            }
+        }
+    }
+
+    /** Set M according to SETTINGS, as for setUp, using and adding to
+     *  _settingsCache if there is one. */
+    private void cachedSetUp(Machine M, String settings) {
+        if (_settingsCache == null) {
+            applySettings(M, settings);
+        } else if (!_settingsCache.apply(M, settings)) {
+            applySettings(M, settings);
+            _settingsCache.put(settings, M);
+        }
+    }
+
+    /** Return a new settings cache as specified by my options, or null
+     *  if there is to be none. */
+    private SettingsCache newSettingsCache() {
+        if (_settingsCacheSize == 0) {
+            return null;
+        }
+        return new SettingsCache(_settingsCacheSize,
+                                 MAX_SETTINGS_CACHE_BYTES, _keystreamLength);
+    }
+
+    /** Set M according to SETTINGS, as for setUp. */
+    private void applySettings(Machine M, String settings) {
         Scanner rotorLine = new Scanner(settings);
         String skipAsterisk = rotorLine.next();
         String[] rotors = new String[mainnumRotors];
@@ -258,29 +1260,148 @@ public final class Main {
         M.setPlugboard(plugboardPerm);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            if (msg.length() - i <= 5) {
-                _output.println(msg.substring(i, i + msg.length() - i));
-            } else {
-                _output.print(msg.substring(i, i + 5) + " ");
-            }
-        }
-    }
+    /** Initial size of the buffer holding a converted message line. */
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /** Maximum number of segments of settings groups per worker thread
+     *  awaiting output in parallel mode. */
+    private static final int MAX_PENDING_GROUPS = 4;
+
+    /** Minimum number of characters in a chunk of a settings group
+     *  converted on its own in parallel mode. */
+    static final long MIN_CHUNK_CHARS = 1 << 20;
+
+    /** Number of characters after which a segment of a settings group
+     *  ends in parallel mode, at the end of the line that reaches it. */
+    static final long MAX_SEGMENT_CHARS = 4 * MIN_CHUNK_CHARS;
+
+    /** Maximum number of input characters awaiting output in parallel
+     *  mode, unless a single segment is larger. */
+    static final long MAX_PENDING_CHARS = 1 << 24;
+
+    /** Number of characters in settings groups that are converted
+     *  together in lanes. */
+    private static final long MAX_LANE_BATCH_CHARS = 1 << 20;
+
+    /** Largest settings group converted in a lane. */
+    private static final int MAX_LANE_GROUP_CHARS = 1 << 16;
+
+    /** Size of the buffer in which bytes are converted in byte mode. */
+    private static final int BYTE_BUFFER_SIZE = 1 << 20;
+
+    /** Size of the mapped windows of files converted in byte mode. */
+    private static final long BYTE_WINDOW_SIZE = 1 << 26;
+
+    /** Default number of bytes of input between checkpoints. */
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1 << 26;
+
+    /** Default number of settings lines in a settings cache. */
+    private static final int DEFAULT_SETTINGS_CACHE_SIZE = 1024;
+
+    /** Maximum estimated bytes occupied by a settings cache. */
+    private static final long MAX_SETTINGS_CACHE_BYTES = 1 << 26;
+
+    /** Default number of keys reported by a search. */
+    private static final int DEFAULT_SEARCH_RESULTS = 10;
+
+    /** Number of characters on which a search first scores each
+     *  candidate. */
+    private static final int SEARCH_PREFIX = 64;
+
+    /** Length of the sequences scored by --ngrams. */
+    private static final int SEARCH_NGRAM_LENGTH = 3;
+
+    /** Number of keys to search for, or 0 to convert the input. */
+    private int _searchResults;
+
+    /** Number of bytes of input between checkpoints, or 0 for no
+     *  checkpoints. */
+    private int _checkpointInterval;
+
+    /** True iff a run should resume from its checkpoint, if any. */
+    private boolean _resume;
+
+    /** File recording checkpoints, or null if none are taken. */
+    private Path _checkpointFile;
+
+    /** The checkpoint from which this run resumes, or null. */
+    private Checkpoint _resumed;
+
+    /** Settings line for converting bytes, or null to convert
+     *  messages. */
+    private String _byteSettings;
+
+    /** Source of bytes to convert in byte mode. */
+    private ReadableByteChannel _byteInput;
+
+    /** Destination of converted bytes in byte mode. */
+    private WritableByteChannel _byteOutput;
+
+    /** True iff _byteInput and _byteOutput, respectively, are files
+     *  opened here, rather than the standard input and output, which are
+     *  left open when done. */
+    private boolean _byteInputFile, _byteOutputFile;
+
+    /** Name of the file of sample text for --ngrams, or null. */
+    private String _ngramsName;
+
+    /** Number of threads converting settings groups; 1 for serial
+     *  processing. */
+    private int _threads = 1;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Address on which to serve requests, or null to convert a single
+     *  input. */
+    private String _serveAddress;
+
+    /** Names of the configuration files to serve. */
+    private String[] _configNames;
+
+    /** The configured machine of which each request served gets a
+     *  copy. */
+    private Machine _machine;
+
+    /** True iff the compiled configuration should be cached. */
+    private boolean _configCache;
+
+    /** Maximum number of settings lines in the settings cache, or 0 for
+     *  none. */
+    private int _settingsCacheSize;
+
+    /** Number of keystrokes in each keystream in the settings cache. */
+    private int _keystreamLength;
+
+    /** Cache of applied settings lines, or null. */
+    private SettingsCache _settingsCache;
+
+    /** True iff rotor tables should be kept off the heap. */
+    private boolean _offHeap;
+
+    /** Name of the file from which to map rotor tables, or null. */
+    private String _tablesName;
+
+    /** True iff settings groups should be converted in lanes. */
+    private boolean _lanes;
+
+    /** True iff the input file should be memory-mapped. */
+    private boolean _mapped;
+
+    /** True iff the machine should cache conversions by rotor state. */
+    private boolean _compiled;
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private MessageWriter _output;
 
     /** Collection of all rotors. */
     private Collection<Rotor> allRotors = new ArrayList<>();
@@ -299,8 +1420,4 @@ public final class Main {
 
     /** Name of the rotor being constructed. */
     private String rotorName;
-
-    /** Hashmap of rotor setting and text inputs mapped to group of text. */
-    private HashMap<Integer, ArrayList<String>> settingLineGroup =
-            new HashMap<Integer, ArrayList<String>>();
 }
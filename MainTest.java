@@ -0,0 +1,619 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class, each running it on
+ *  files as from the command line.
+ *  @author Naman Patel
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The rotors available to the machines tested. */
+    private static final String[] ROTORS = {
+        "B", "C", "Beta", "Gamma", "I", "II", "III", "IV", "V", "VI", "VII",
+        "VIII"
+    };
+
+    /** The moving rotors among ROTORS. */
+    private static final String[] MOVING = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+    };
+
+    /** Return a new temporary file holding the configuration of a
+     *  machine with five slots, three pawls, and ROTORS. */
+    private Path config() throws IOException {
+        return tempFile(".conf", navalConfig(5, 3, ROTORS));
+    }
+
+    /** Return a random settings line for a machine configured by
+     *  config(), chosen with RANDOM. */
+    private String settings(Random random) {
+        ArrayList<String> moving = new ArrayList<>(List.of(MOVING));
+        Collections.shuffle(moving, random);
+        StringBuilder result = new StringBuilder("*");
+        result.append(random.nextBoolean() ? " B" : " C");
+        result.append(random.nextBoolean() ? " Beta" : " Gamma");
+        for (int i = 0; i < 3; i += 1) {
+            result.append(' ').append(moving.get(i));
+        }
+        result.append(' ');
+        for (int i = 0; i < 4; i += 1) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        ArrayList<Character> plugs = new ArrayList<>();
+        for (char ch : UPPER_STRING.toCharArray()) {
+            plugs.add(ch);
+        }
+        Collections.shuffle(plugs, random);
+        for (int i = 0, n = random.nextInt(8); i < n; i += 1) {
+            result.append(" (").append(plugs.get(2 * i))
+                .append(plugs.get(2 * i + 1)).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Append to INPUT a message line of LENGTH random letters, chosen
+     *  with RANDOM, with blanks scattered among them. */
+    private void message(StringBuilder input, Random random, int length) {
+        for (int i = 0; i < length; i += 1) {
+            if (random.nextInt(6) == 0) {
+                input.append(' ');
+            }
+            input.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        input.append('\n');
+    }
+
+    /** Return the number of files this process has open, or 0 if that
+     *  is not measured. */
+    private long openFiles() {
+        OperatingSystemMXBean bean =
+            ManagementFactory.getOperatingSystemMXBean();
+        if (!(bean instanceof com.sun.management.UnixOperatingSystemMXBean)) {
+            return 0;
+        }
+        return ((com.sun.management.UnixOperatingSystemMXBean) bean)
+            .getOpenFileDescriptorCount();
+    }
+
+    /** Return the contents of FILE, deleting it. */
+    private String take(Path file) throws IOException {
+        try {
+            return Files.readString(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Run Main with OPTIONS on the configuration file CONFIG, the input
+     *  file INPUT and the output file OUTPUT. */
+    private void run(Path config, Path input, Path output,
+                     String... options) {
+        ArrayList<String> args = new ArrayList<>(List.of(options));
+        args.add(config.toString());
+        args.add(input.toString());
+        args.add(output.toString());
+        new Main(args.toArray(new String[0])).process();
+    }
+
+    /** Return the output of Main run with OPTIONS on the configuration
+     *  file CONFIG and the input file INPUT. */
+    private String convert(Path config, Path input, String... options)
+        throws IOException {
+        Path output = Files.createTempFile("enigma", ".out");
+        run(config, input, output, options);
+        return take(output);
+    }
+
+    /** Return the bytes written by Main run with OPTIONS on the
+     *  configuration file CONFIG and the input file INPUT into an output
+     *  file that held the bytes PREVIOUS. */
+    private byte[] convertBytes(Path config, Path input, byte[] previous,
+                                String... options) throws IOException {
+        Path output = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(output, previous);
+            run(config, input, output, options);
+            return Files.readAllBytes(output);
+        } finally {
+            Files.delete(output);
+        }
+    }
+
+    /** Check that running Main with OPTIONS on the configuration file
+     *  CONFIG and the input file INPUT fails with a message starting
+     *  with MESSAGE. */
+    private void checkError(String message, Path config, Path input,
+                            String... options) throws IOException {
+        try {
+            convertBytes(config, input, new byte[0], options);
+            fail(msg("no error", "%s", Arrays.toString(options)));
+        } catch (EnigmaException excp) {
+            assertTrue(msg("error", "%s: %s", Arrays.toString(options),
+                           excp.getMessage()),
+                       excp.getMessage().startsWith(message));
+        }
+    }
+
+    /** Names of the rotors of the machine configured by
+     *  byteConfig(), the first a reflector, the second fixed. */
+    private static final String[] BYTE_ROTORS = {
+        "R", "F", "M1", "M2", "M3"
+    };
+
+    /** Return the character of index I in the alphabet of byteConfig():
+     *  the 256 characters following U+00FF, none of them in ASCII or
+     *  ISO-8859-1. */
+    private static char byteSymbol(int i) {
+        return (char) (0x100 + i);
+    }
+
+    /** Return the cycles of PERM, a permutation of 0 .. 255, in
+     *  the notation of a configuration file, writing index I as
+     *  byteSymbol(I). */
+    private static String byteCycles(int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i += 1) {
+            if (!seen[i]) {
+                result.append(" (");
+                for (int k = i; !seen[k]; k = perm[k]) {
+                    seen[k] = true;
+                    result.append(byteSymbol(k));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of 0 .. 255 chosen with RANDOM, which
+     *  is a derangement made of 2-cycles iff REFLECTOR. */
+    private static int[] bytePermutation(Random random, boolean reflector) {
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < Machine.BYTE_SYMBOLS; i += 1) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        int[] result = new int[Machine.BYTE_SYMBOLS];
+        for (int i = 0; i < result.length; i += 1) {
+            if (!reflector) {
+                result[order.get(i)] = order.get((i + 1) % result.length);
+            } else {
+                result[order.get(i)] = order.get(i ^ 1);
+            }
+        }
+        return result;
+    }
+
+    /** Return the alphabet of byteSymbol(0) .. byteSymbol(255). */
+    private static String byteAlphabet() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < Machine.BYTE_SYMBOLS; i += 1) {
+            result.append(byteSymbol(i));
+        }
+        return result.toString();
+    }
+
+    /** Return the text of a configuration file for a machine with a
+     *  256-character alphabet, five slots, three pawls, and the rotors
+     *  BYTE_ROTORS with the permutations PERMS and, for the moving ones,
+     *  the notches NOTCHES. */
+    private static String byteConfig(int[][] perms, String[] notches) {
+        StringBuilder result = new StringBuilder(byteAlphabet());
+        result.append("\n5 3\n");
+        for (int r = 0; r < BYTE_ROTORS.length; r += 1) {
+            result.append(BYTE_ROTORS[r]).append(' ');
+            if (r == 0) {
+                result.append('R');
+            } else if (r == 1) {
+                result.append('N');
+            } else {
+                result.append('M').append(notches[r]);
+            }
+            result.append(byteCycles(perms[r])).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the machine configured by byteConfig(PERMS, NOTCHES). */
+    private static Machine byteMachine(int[][] perms, String[] notches) {
+        Alphabet alpha = new Alphabet(byteAlphabet());
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (int r = 0; r < BYTE_ROTORS.length; r += 1) {
+            Permutation perm = new Permutation(perms[r], alpha);
+            if (r == 0) {
+                all.add(new Reflector(BYTE_ROTORS[r], perm));
+            } else if (r == 1) {
+                all.add(new FixedRotor(BYTE_ROTORS[r], perm));
+            } else {
+                all.add(new MovingRotor(BYTE_ROTORS[r], perm, notches[r]));
+            }
+        }
+        return new Machine(alpha, 5, 3, all);
+    }
+
+    /** Check that converting INPUT in parallel with each of OPTIONS, and
+     *  with and without compiled state tables, gives the same output as
+     *  converting it serially. */
+    private void checkParallel(String input, String... options)
+        throws IOException {
+        Path config = config();
+        Path file = tempFile(".in", input);
+        try {
+            String expected = convert(config, file);
+            assertFalse(expected.isEmpty());
+            for (String option : options) {
+                assertEquals(msg("output", "%s", option), expected,
+                             convert(config, file, option));
+                assertEquals(msg("output", "%s --compiled", option),
+                             expected,
+                             convert(config, file, option, "--compiled"));
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(file);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkParallelGroups() throws IOException {
+        Random random = new Random(10);
+        StringBuilder input = new StringBuilder();
+        for (int g = 0; g < 500; g += 1) {
+            input.append(settings(random)).append('\n');
+            for (int n = 1 + random.nextInt(4); n > 0; n -= 1) {
+                message(input, random, random.nextInt(200));
+            }
+        }
+        checkParallel(input.toString(), "--parallel", "--parallel=2",
+                      "--parallel=7");
+    }
+
+    @Test
+    public void checkParallelChunks() throws IOException {
+        Random random = new Random(12);
+        int size = (int) Main.MIN_CHUNK_CHARS;
+        StringBuilder input = new StringBuilder();
+        input.append(settings(random)).append('\n');
+        message(input, random, 30);
+        input.append(settings(random)).append('\n');
+        for (int n = 0; n < 5 * size / 2; n += 1000) {
+            message(input, random, random.nextInt(2000));
+        }
+        input.append(settings(random)).append('\n');
+        message(input, random, 2 * size + 17);
+        input.append(settings(random)).append('\n');
+        message(input, random, 0);
+        message(input, random, 5);
+        checkParallel(input.toString(), "--parallel=2", "--parallel=3",
+                      "--parallel=5");
+    }
+
+    @Test
+    public void checkParallelStreaming() throws Exception {
+        Random random = new Random(14);
+        StringBuilder first = new StringBuilder();
+        first.append(settings(random)).append('\n');
+        while (first.length()
+               < Main.MAX_PENDING_CHARS + 2 * Main.MAX_SEGMENT_CHARS) {
+            message(first, random, 1000);
+        }
+        StringBuilder rest = new StringBuilder();
+        rest.append(settings(random)).append('\n');
+        message(rest, random, 100);
+        Path config = config();
+        Path file = tempFile(".in", first.toString() + rest);
+        Path dir = Files.createTempDirectory("enigma");
+        Path fifo = dir.resolve("input"), output = dir.resolve("output");
+        CountDownLatch release = new CountDownLatch(1);
+        Exception[] failure = new Exception[1];
+        Thread writer = new Thread(() -> {
+            try (OutputStream out = Files.newOutputStream(fifo)) {
+                out.write(first.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                release.await();
+                out.write(rest.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | InterruptedException excp) {
+                failure[0] = excp;
+            }
+        });
+        Thread main = new Thread(() -> {
+            try {
+                run(config, fifo, output, "--parallel=2");
+            } catch (RuntimeException excp) {
+                failure[0] = excp;
+            }
+        });
+        try {
+            assertEquals("mkfifo", 0,
+                         new ProcessBuilder("mkfifo", fifo.toString())
+                         .start().waitFor());
+            writer.start();
+            main.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while ((!Files.exists(output) || Files.size(output) == 0)
+                   && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("no output before the end of the input",
+                       Files.exists(output) && Files.size(output) > 0);
+            release.countDown();
+            writer.join();
+            main.join();
+            assertNull(msg("failure", "%s", failure[0]), failure[0]);
+            assertTrue("output differs from that of a serial run",
+                       convert(config, file)
+                       .equals(Files.readString(output)));
+        } finally {
+            release.countDown();
+            writer.join();
+            main.join();
+            Files.deleteIfExists(fifo);
+            Files.deleteIfExists(output);
+            Files.delete(dir);
+            Files.delete(config);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkOffHeap() throws IOException {
+        Random random = new Random(16);
+        StringBuilder input = new StringBuilder();
+        for (int g = 0; g < 20; g += 1) {
+            input.append(settings(random)).append('\n');
+            message(input, random, random.nextInt(300));
+        }
+        Path config = config();
+        Path file = tempFile(".in", input.toString());
+        Path tables = Files.createTempFile("enigma", ".tables");
+        try {
+            String expected = convert(config, file);
+            assertEquals("direct", expected,
+                         convert(config, file, "--off-heap"));
+            assertEquals("mapped", expected,
+                         convert(config, file, "--off-heap=" + tables));
+            byte[] written = Files.readAllBytes(tables);
+            assertEquals("reused", expected,
+                         convert(config, file, "--off-heap=" + tables));
+            assertArrayEquals(written, Files.readAllBytes(tables));
+        } finally {
+            Files.delete(config);
+            Files.delete(file);
+            Files.delete(tables);
+        }
+    }
+
+    @Test
+    public void checkBytes() throws IOException {
+        Random random = new Random(24);
+        int[][] perms = new int[BYTE_ROTORS.length][];
+        String[] notches = new String[BYTE_ROTORS.length];
+        for (int r = 0; r < perms.length; r += 1) {
+            perms[r] = bytePermutation(random, r == 0);
+            notches[r] = "" + byteSymbol(random.nextInt(256))
+                + byteSymbol(random.nextInt(256));
+        }
+        String text = byteConfig(perms, notches);
+        assertTrue("default charset cannot encode a 256-character alphabet",
+                   Charset.defaultCharset().newEncoder().canEncode(text));
+        String position = "";
+        for (int i = 0; i < 4; i += 1) {
+            position += byteSymbol(random.nextInt(256));
+        }
+        String plugs = "(" + byteSymbol(7) + byteSymbol(200) + ")";
+        String option = "--bytes=* R F M1 M2 M3 " + position + " " + plugs;
+
+        byte[] input = new byte[(5 << 19) + 3];
+        random.nextBytes(input);
+        Machine M = byteMachine(perms, notches);
+        M.insertRotors(BYTE_ROTORS);
+        M.setRotors(position);
+        M.setPlugboard(new Permutation(plugs, new Alphabet(byteAlphabet())));
+        byte[] expected = new byte[input.length];
+        for (int i = 0; i < input.length; i += 1) {
+            expected[i] = (byte) M.convert(input[i] & 0xff);
+        }
+
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path file = Files.createTempFile("enigma", ".in");
+        try {
+            Files.write(config, text.getBytes(Charset.defaultCharset()));
+            Files.write(file, input);
+            byte[] longer = new byte[input.length + 100];
+            String[][] runs = {
+                { option }, { option, "--mmap" }, { option, "--compiled" }
+            };
+            for (String[] options : runs) {
+                String name = Arrays.toString(options);
+                assertArrayEquals(msg("output", "%s", name), expected,
+                                  convertBytes(config, file, longer,
+                                               options));
+            }
+            Files.write(file, expected);
+            for (String[] options : runs) {
+                String name = Arrays.toString(options);
+                assertArrayEquals(msg("round trip", "%s", name), input,
+                                  convertBytes(config, file, new byte[0],
+                                               options));
+            }
+            Files.write(file, new byte[0]);
+            for (String[] options : runs) {
+                String name = Arrays.toString(options);
+                assertArrayEquals(msg("empty input", "%s", name),
+                                  new byte[0],
+                                  convertBytes(config, file, longer,
+                                               options));
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkByteErrors() throws IOException {
+        Random random = new Random(25);
+        int[][] perms = new int[BYTE_ROTORS.length][];
+        String[] notches = new String[BYTE_ROTORS.length];
+        for (int r = 0; r < perms.length; r += 1) {
+            perms[r] = bytePermutation(random, r == 0);
+            notches[r] = "" + byteSymbol(r);
+        }
+        String position =
+            "" + byteSymbol(1) + byteSymbol(2) + byteSymbol(3) + byteSymbol(4);
+        Path naval = config();
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path file = tempFile(".in", "ABC");
+        try {
+            Files.write(config, byteConfig(perms, notches)
+                        .getBytes(Charset.defaultCharset()));
+            checkError("byte mode needs an alphabet of 256 characters",
+                       naval, file, "--bytes=* B Beta I II III AAAA");
+            checkError("invalid input file, invalid rotor settings", config,
+                       file, "--bytes=R F M1 M2 M3 " + position);
+            checkError("invalid input file, invalid rotor settings", config,
+                       file, "--bytes=");
+            checkError("misnamed rotors", config, file,
+                       "--bytes=* R F M1 M2 M9 " + position);
+            checkError("not valid settings", config, file,
+                       "--bytes=* R F M1 M2 M3 " + position.substring(1));
+            checkError("cannot search in byte mode", config, file,
+                       "--bytes=* R F M1 M2 M3 " + position,
+                       "--search");
+            checkError("checkpoints are only taken converting messages",
+                       config, file,
+                       "--bytes=* R F M1 M2 M3 " + position,
+                       "--checkpoint");
+        } finally {
+            Files.delete(naval);
+            Files.delete(config);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkResume() throws IOException {
+        Random random = new Random(25);
+        StringBuilder input = new StringBuilder();
+        for (int g = 0; g < 40; g += 1) {
+            input.append(settings(random)).append('\n');
+            for (int n = 1 + random.nextInt(4); n > 0; n -= 1) {
+                message(input, random, random.nextInt(3000));
+            }
+        }
+        int bad = input.lastIndexOf("\n", 3 * input.length() / 4) + 1;
+        char original = input.charAt(bad);
+        assertTrue(original != '*');
+        Path config = config();
+        Path file = tempFile(".in", input.toString());
+        Path output = Files.createTempFile("enigma", ".out");
+        Path checkpoint = Paths.get(output + ".checkpoint");
+        try {
+            String expected = convert(config, file);
+            run(config, file, output, "--resume");
+            assertEquals("resume without checkpoint", expected,
+                         Files.readString(output));
+            assertFalse(Files.exists(checkpoint));
+
+            /* Interrupt a run with a character outside the alphabet,
+             * after it has taken checkpoints. */
+            input.setCharAt(bad, '#');
+            Files.writeString(file, input);
+            try {
+                run(config, file, output, "--checkpoint=4096");
+                fail("bad character converted");
+            } catch (EnigmaException excp) {
+                assertEquals("character not found", excp.getMessage());
+            }
+            Checkpoint taken = Checkpoint.read(checkpoint);
+            assertTrue(taken.inputOffset() > input.length() / 2);
+            assertTrue(taken.inputOffset() <= bad);
+            int offset = (int) taken.outputOffset();
+            String written = Files.readString(output);
+            assertTrue(written.length() >= offset);
+            assertEquals(expected.substring(0, offset),
+                         written.substring(0, offset));
+            input.setCharAt(bad, original);
+            Files.writeString(file, input);
+
+            Files.writeString(output, expected.substring(0, offset - 1));
+            try {
+                run(config, file, output, "--resume");
+                fail("resumed from a short output");
+            } catch (EnigmaException excp) {
+                assertEquals(output + " is shorter than its checkpoint",
+                             excp.getMessage());
+            }
+            assertTrue(Files.exists(checkpoint));
+
+            char[] junk = new char[expected.length() - offset + 100];
+            Arrays.fill(junk, 'X');
+            Files.writeString(output, expected.substring(0, offset)
+                              + new String(junk));
+            run(config, file, output, "--resume");
+            assertEquals("resumed output", expected,
+                         Files.readString(output));
+            assertFalse("checkpoint kept", Files.exists(checkpoint));
+        } finally {
+            Files.delete(config);
+            Files.delete(file);
+            Files.delete(output);
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void checkFilesClosed() throws IOException {
+        Random random = new Random(9);
+        StringBuilder input = new StringBuilder();
+        input.append(settings(random)).append('\n');
+        message(input, random, 100);
+        Path config = config();
+        Path file = tempFile(".in", input.toString());
+        try {
+            String expected = convert(config, file);
+            long before = openFiles();
+            for (int k = 0; k < 20; k += 1) {
+                assertEquals(expected, convert(config, file));
+                assertEquals(expected, convert(config, file, "--mmap"));
+            }
+            assertTrue("files left open", openFiles() < before + 10);
+        } finally {
+            Files.delete(config);
+            Files.delete(file);
+        }
+    }
+
+}
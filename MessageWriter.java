@@ -0,0 +1,236 @@
+package enigma;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A sink for converted messages that formats each message line into
+ *  groups of five characters and writes the encoded result to a byte
+ *  channel in bulk.
+ *  @author Naman Patel
+ */
+class MessageWriter implements Flushable {
+
+    /** A writer of messages to CHANNEL, encoded with CHARSET. */
+    MessageWriter(WritableByteChannel channel, Charset charset) {
+        this(channel, charset, BUFFER_SIZE);
+    }
+
+    /** A writer of messages to CHANNEL, encoded with CHARSET, that
+     *  buffers up to BUFFERSIZE bytes of output. */
+    MessageWriter(WritableByteChannel channel, Charset charset,
+                  int bufferSize) {
+        _channel = channel;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _ascii = charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII);
+        _bytes = ByteBuffer.allocateDirect(bufferSize);
+        _chars = CharBuffer.allocate(INITIAL_LINE_SIZE);
+    }
+
+    /** A writer of messages to a new file named NAME in the default
+     *  charset. */
+    static MessageWriter open(String name) {
+        try {
+            return new MessageWriter(
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING),
+                Charset.defaultCharset());
+        } catch (IOException | SecurityException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A writer of messages to the file named NAME in the default
+     *  charset that continues after its first POSITION bytes, discarding
+     *  any others, as when resuming from a checkpoint. */
+    static MessageWriter resume(String name, long position) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(name),
+                                       StandardOpenOption.WRITE);
+        } catch (IOException | SecurityException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (channel.size() < position) {
+                throw error("%s is shorter than its checkpoint", name);
+            }
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        MessageWriter result =
+            new MessageWriter(channel, Charset.defaultCharset());
+        result._written = position;
+        return result;
+    }
+
+    /** A writer of messages to the standard output in the default
+     *  charset. */
+    static MessageWriter standardOutput() {
+        MessageWriter result =
+            new MessageWriter(new FileOutputStream(FileDescriptor.out)
+                              .getChannel(),
+                              Charset.defaultCharset());
+        result._keepOpen = true;
+        return result;
+    }
+
+    /** Write MSG[OFF .. OFF+LEN-1] as one line in groups of five
+     *  characters separated by blanks (except that the last group may
+     *  have fewer).  An empty message is written as an empty line. */
+    void writeMessageLine(char[] msg, int off, int len) {
+        int size = len + len / GROUP_SIZE + NEWLINE.length();
+        if (_chars.capacity() < size) {
+            _chars = CharBuffer.allocate(Math.max(size,
+                                                  2 * _chars.capacity()));
+        }
+        char[] chars = _chars.array();
+        int k = 0;
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % GROUP_SIZE == 0) {
+                chars[k] = ' ';
+                k += 1;
+            }
+            chars[k] = msg[off + i];
+            k += 1;
+        }
+        NEWLINE.getChars(0, NEWLINE.length(), chars, k);
+        k += NEWLINE.length();
+        write(chars, k);
+    }
+
+    /** Write LINE as it is, followed by a line terminator. */
+    void writeLine(String line) {
+        int size = line.length() + NEWLINE.length();
+        if (_chars.capacity() < size) {
+            _chars = CharBuffer.allocate(Math.max(size,
+                                                  2 * _chars.capacity()));
+        }
+        char[] chars = _chars.array();
+        line.getChars(0, line.length(), chars, 0);
+        NEWLINE.getChars(0, NEWLINE.length(), chars, line.length());
+        write(chars, size);
+    }
+
+    /** Return the number of bytes written to my channel so far,
+     *  including those still buffered. */
+    long position() {
+        return _written + _bytes.position();
+    }
+
+    /** Write out all buffered bytes. */
+    @Override
+    public void flush() {
+        try {
+            _bytes.flip();
+            while (_bytes.hasRemaining()) {
+                _written += _channel.write(_bytes);
+            }
+            _bytes.clear();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Flush and close my channel, unless it is the standard output,
+     *  which is only flushed, so that later writes to System.out still
+     *  reach it. */
+    void close() {
+        flush();
+        if (_keepOpen) {
+            return;
+        }
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Encode CHARS[0 .. LEN-1] into my buffer, flushing it as
+     *  needed. */
+    private void write(char[] chars, int len) {
+        int i;
+        for (i = 0; _ascii && i < len && chars[i] < ASCII_LIMIT; i += 1) {
+            if (!_bytes.hasRemaining()) {
+                flush();
+            }
+            _bytes.put((byte) chars[i]);
+        }
+        if (i == len) {
+            return;
+        }
+        CharBuffer rest = CharBuffer.wrap(chars, i, len - i);
+        _encoder.reset();
+        CoderResult result = _encoder.encode(rest, _bytes, true);
+        while (result.isOverflow()) {
+            flush();
+            result = _encoder.encode(rest, _bytes, true);
+        }
+        result = _encoder.flush(_bytes);
+        while (result.isOverflow()) {
+            flush();
+            result = _encoder.flush(_bytes);
+        }
+    }
+
+    /** Number of characters in a full group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Terminator written after each message line. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Characters below this are encoded as themselves in ASCII-compatible
+     *  charsets. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Size of my output buffer. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Initial capacity of the buffer holding a formatted line. */
+    private static final int INITIAL_LINE_SIZE = 1024;
+
+    /** Destination of my output. */
+    private final WritableByteChannel _channel;
+
+    /** Encoder for the charset of my output. */
+    private final CharsetEncoder _encoder;
+
+    /** True iff characters 0-127 are encoded as single bytes in my
+     *  charset. */
+    private final boolean _ascii;
+
+    /** Encoded output not yet written to _channel. */
+    private final ByteBuffer _bytes;
+
+    /** Buffer for formatting one message line. */
+    private CharBuffer _chars;
+
+    /** Number of bytes written to _channel. */
+    private long _written;
+
+    /** True iff close() should leave _channel open. */
+    private boolean _keepOpen;
+
+}
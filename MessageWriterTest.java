@@ -0,0 +1,198 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageWriter class.
+ *  @author Naman Patel
+ */
+public class MessageWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Line terminator written by MessageWriters. */
+    private static final String NL = System.lineSeparator();
+
+    /** Characters encoded in UTF-8 in two, three and four bytes. */
+    private static final String WIDE = "\u00e9\u20ac\ud834\udd1e";
+
+    /** Sizes of the output buffers of the writers tested.  All hold a
+     *  character of any size in UTF-8. */
+    private static final int[] BUFFER_SIZES = { 4, 5, 6, 7, 11, 1 << 16 };
+
+    /** A channel that collects the bytes written to it, accepting at most
+     *  _step at a time. */
+    private static class Collector implements WritableByteChannel {
+
+        /** A channel accepting at most STEP bytes at a time. */
+        Collector(int step) {
+            _step = step;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = Math.min(_step, src.remaining());
+            for (int i = 0; i < n; i += 1) {
+                _bytes.write(src.get());
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Return the bytes written so far. */
+        byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        /** Largest number of bytes accepted by one write. */
+        private final int _step;
+
+        /** The bytes written so far. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+    }
+
+    /** Return TEXT as a message line would be written: in groups of five
+     *  characters separated by blanks, followed by a line terminator. */
+    private static String grouped(String text) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i += 1) {
+            if (i > 0 && i % MessageWriter.GROUP_SIZE == 0) {
+                result.append(' ');
+            }
+            result.append(text.charAt(i));
+        }
+        return result.append(NL).toString();
+    }
+
+    /** Return the characters of the first N code points of the cycle of
+     *  upper-case letters and the characters of WIDE.  Each code point of
+     *  WIDE beyond the BMP is represented, as in Java strings, by two
+     *  chars. */
+    private static String text(int n) {
+        String cycle = UPPER_STRING + WIDE;
+        StringBuilder result = new StringBuilder();
+        for (int i = 0, k = 0; i < n; i += 1) {
+            int cp = cycle.codePointAt(k);
+            result.appendCodePoint(cp);
+            k = (k + Character.charCount(cp)) % cycle.length();
+        }
+        return result.toString();
+    }
+
+    /** Check that writing each of MESSAGES as a message line through
+     *  writers in CHARSET with each size in BUFFER_SIZES, to channels
+     *  accepting 1, 3 and many bytes at a time, writes the same bytes as
+     *  encoding the grouped messages directly, and that position()
+     *  counts them. */
+    private void checkMessages(Charset charset, String... messages) {
+        StringBuilder expected = new StringBuilder();
+        for (String message : messages) {
+            expected.append(grouped(message));
+        }
+        byte[] want = expected.toString().getBytes(charset);
+        for (int size : BUFFER_SIZES) {
+            for (int step : new int[] { 1, 3, 1 << 20 }) {
+                Collector channel = new Collector(step);
+                MessageWriter output =
+                    new MessageWriter(channel, charset, size);
+                for (String message : messages) {
+                    char[] chars = ("<<" + message + ">").toCharArray();
+                    output.writeMessageLine(chars, 2, message.length());
+                }
+                assertEquals(msg("position", "buffer %d", size),
+                             want.length, output.position());
+                output.flush();
+                assertEquals(msg("position", "buffer %d", size),
+                             want.length, output.position());
+                assertArrayEquals(msg("bytes", "buffer %d, step %d", size,
+                                      step),
+                                  want, channel.bytes());
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGrouping() {
+        String[] messages = new String[24];
+        for (int n = 0; n < messages.length; n += 1) {
+            messages[n] = UPPER_STRING.substring(0, n);
+        }
+        checkMessages(StandardCharsets.UTF_8, messages);
+        checkMessages(StandardCharsets.US_ASCII, messages);
+        assertEquals("ABCDE FGHIJ K" + NL, grouped("ABCDEFGHIJK"));
+    }
+
+    @Test
+    public void checkMultiByteGrouping() {
+        String[] messages = new String[40];
+        for (int n = 0; n < messages.length; n += 1) {
+            messages[n] = text(n);
+        }
+        checkMessages(StandardCharsets.UTF_8, messages);
+        checkMessages(StandardCharsets.UTF_8, WIDE + WIDE + WIDE, "A",
+                      "\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac");
+        checkMessages(StandardCharsets.ISO_8859_1, "A\u00e9\u00ff\u00c0BC");
+        checkMessages(StandardCharsets.UTF_16BE, text(37), text(3));
+    }
+
+    @Test
+    public void checkLongLines() {
+        checkMessages(StandardCharsets.UTF_8, text(5000), "ABCDEF",
+                      text(2048));
+    }
+
+    @Test
+    public void checkWriteLine() {
+        Collector channel = new Collector(1 << 20);
+        MessageWriter output =
+            new MessageWriter(channel, StandardCharsets.UTF_8, 7);
+        output.writeLine("* B Beta III IV I AXLE");
+        output.writeMessageLine("ABCDEFG".toCharArray(), 0, 7);
+        output.writeLine("");
+        output.writeLine(WIDE);
+        output.flush();
+        String expected = "* B Beta III IV I AXLE" + NL + "ABCDE FG" + NL
+            + NL + WIDE + NL;
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8),
+                          channel.bytes());
+    }
+
+    @Test
+    public void checkDeferredEncoding() {
+        checkMessages(DEFERRED, UPPER_STRING, "",
+                      UPPER_STRING + UPPER_STRING + UPPER_STRING);
+    }
+
+    @Test
+    public void checkStandardOutputKept() {
+        MessageWriter.standardOutput().close();
+        assertTrue("standard output closed", FileDescriptor.out.valid());
+    }
+
+}
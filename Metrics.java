@@ -0,0 +1,295 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** Counters and latency histograms describing the work of Machines and
+ *  Main.  Metrics are kept only if the system property enigma.metrics is
+ *  "true" when this class is loaded.  Every update is guarded by ENABLED,
+ *  a constant, so that when they are not kept the guarded code is
+ *  compiled away.  Counters and histogram buckets are LongAdders, which
+ *  spread concurrent updates over separate cells.
+ *
+ *  When metrics are kept, they can be read over JMX as the MBean
+ *  enigma:type=Metrics (see MetricsMBean), and if the system property
+ *  enigma.metrics.interval is a positive number of seconds, a report is
+ *  printed to the standard error at that interval.
+ *  @author Naman Patel
+ */
+final class Metrics implements MetricsMBean {
+
+    /** True iff metrics are kept. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** Characters converted by Machines. */
+    static final LongAdder CHARACTERS = new LongAdder();
+
+    /** Message lines converted by Main. */
+    static final LongAdder MESSAGES = new LongAdder();
+
+    /** Settings lines found, and not found, in a SettingsCache. */
+    static final LongAdder SETTINGS_HITS = new LongAdder(),
+        SETTINGS_MISSES = new LongAdder();
+
+    /** Time to read each configuration. */
+    static final Histogram READ_CONFIG = new Histogram();
+
+    /** Time to apply each settings line. */
+    static final Histogram SET_UP = new Histogram();
+
+    /** Time to convert each message line. */
+    static final Histogram CONVERT = new Histogram();
+
+    /** Time to write each message line. */
+    static final Histogram WRITE = new Histogram();
+
+    /** Time to take each checkpoint. */
+    static final Histogram CHECKPOINT = new Histogram();
+
+    /** Time for each run of Main.process. */
+    static final Histogram PROCESS = new Histogram();
+
+    /** The one instance, which is the registered MBean. */
+    static final Metrics INSTANCE = new Metrics();
+
+    /** Not instantiable except as INSTANCE. */
+    private Metrics() {
+    }
+
+    /** If metrics are kept, register them with the platform MBean server
+     *  and start any periodic reports.  Subsequent calls do nothing. */
+    static synchronized void start() {
+        if (!ENABLED || _started) {
+            return;
+        }
+        _started = true;
+        try {
+            register(ManagementFactory.getPlatformMBeanServer());
+        } catch (JMException excp) {
+            System.err.printf("Warning: metrics not registered: %s%n",
+                              excp.getMessage());
+        }
+        long interval = Long.getLong("enigma.metrics.interval", 0);
+        if (interval > 0) {
+            ScheduledExecutorService reporter =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread result = new Thread(r, "enigma-metrics");
+                    result.setDaemon(true);
+                    return result;
+                });
+            reporter.scheduleAtFixedRate(() -> INSTANCE.print(System.err),
+                                         interval, interval,
+                                         TimeUnit.SECONDS);
+        }
+    }
+
+    /** Register INSTANCE with SERVER as OBJECT_NAME. */
+    static void register(MBeanServer server) throws JMException {
+        server.registerMBean(new StandardMBean(INSTANCE, MetricsMBean.class),
+                             new ObjectName(OBJECT_NAME));
+    }
+
+    /** Print a report of the metrics to OUT. */
+    void print(PrintStream out) {
+        out.print(getReport());
+        out.flush();
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return CHARACTERS.sum();
+    }
+
+    @Override
+    public long getMessagesConverted() {
+        return MESSAGES.sum();
+    }
+
+    @Override
+    public long getSettingsApplied() {
+        return SET_UP.count();
+    }
+
+    @Override
+    public long getSettingsCacheHits() {
+        return SETTINGS_HITS.sum();
+    }
+
+    @Override
+    public long getSettingsCacheMisses() {
+        return SETTINGS_MISSES.sum();
+    }
+
+    @Override
+    public long getConfigurationsRead() {
+        return READ_CONFIG.count();
+    }
+
+    @Override
+    public double getReadConfigMillis() {
+        return READ_CONFIG.totalMillis();
+    }
+
+    @Override
+    public double getSetUpMillis() {
+        return SET_UP.totalMillis();
+    }
+
+    @Override
+    public double getConvertMillis() {
+        return CONVERT.totalMillis();
+    }
+
+    @Override
+    public double getWriteMillis() {
+        return WRITE.totalMillis();
+    }
+
+    @Override
+    public double getCheckpointMillis() {
+        return CHECKPOINT.totalMillis();
+    }
+
+    @Override
+    public double getProcessMillis() {
+        return PROCESS.totalMillis();
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("enigma metrics:%n"));
+        result.append(String.format("  characters converted %d%n",
+                                    getCharactersConverted()));
+        result.append(String.format("  messages converted   %d%n",
+                                    getMessagesConverted()));
+        result.append(String.format("  settings cache       %d hits, "
+                                    + "%d misses%n",
+                                    getSettingsCacheHits(),
+                                    getSettingsCacheMisses()));
+        READ_CONFIG.report(result, "read config");
+        SET_UP.report(result, "set up");
+        CONVERT.report(result, "convert");
+        WRITE.report(result, "write");
+        CHECKPOINT.report(result, "checkpoint");
+        PROCESS.report(result, "process");
+        return result.toString();
+    }
+
+    @Override
+    public void reset() {
+        CHARACTERS.reset();
+        MESSAGES.reset();
+        SETTINGS_HITS.reset();
+        SETTINGS_MISSES.reset();
+        READ_CONFIG.reset();
+        SET_UP.reset();
+        CONVERT.reset();
+        WRITE.reset();
+        CHECKPOINT.reset();
+        PROCESS.reset();
+    }
+
+    /** A histogram of durations in nanoseconds, in buckets whose bounds
+     *  are powers of two. */
+    static final class Histogram {
+
+        /** An empty histogram. */
+        Histogram() {
+            for (int i = 0; i < _buckets.length; i += 1) {
+                _buckets[i] = new LongAdder();
+            }
+        }
+
+        /** Record an event that started at time START, as given by
+         *  System.nanoTime, and has just ended. */
+        void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        /** Record an event that lasted NANOS nanoseconds. */
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            _buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)]
+                .increment();
+            _total.add(nanos);
+        }
+
+        /** Return the number of events recorded. */
+        long count() {
+            long result = 0;
+            for (LongAdder bucket : _buckets) {
+                result += bucket.sum();
+            }
+            return result;
+        }
+
+        /** Return the total duration of the events recorded in
+         *  milliseconds. */
+        double totalMillis() {
+            return _total.sum() / 1e6;
+        }
+
+        /** Return an upper bound in nanoseconds on the durations of the
+         *  fraction P of the events recorded that were shortest, or 0 if
+         *  there are none. */
+        long percentile(double p) {
+            long[] counts = new long[_buckets.length];
+            long count = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] = _buckets[i].sum();
+                count += counts[i];
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                seen += counts[i];
+                if (seen > 0 && seen >= p * count) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /** Forget all events recorded. */
+        void reset() {
+            for (LongAdder bucket : _buckets) {
+                bucket.reset();
+            }
+            _total.reset();
+        }
+
+        /** Append a line describing me, labeled LABEL, to OUT. */
+        void report(StringBuilder out, String label) {
+            long count = count();
+            out.append(String.format(
+                "  %-20s %d, total %.3f ms, p50 < %.3f ms, "
+                + "p99 < %.3f ms%n", label, count, totalMillis(),
+                percentile(MEDIAN) / 1e6, percentile(P99) / 1e6));
+        }
+
+        /** Bucket I counts the events lasting under 2**I nanoseconds but
+         *  no less than 2**(I-1) (or 0, for I = 0). */
+        private final LongAdder[] _buckets = new LongAdder[Long.SIZE];
+
+        /** Total duration of the events recorded, in nanoseconds. */
+        private final LongAdder _total = new LongAdder();
+    }
+
+    /** Name under which I am registered as an MBean. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Fractions of events reported. */
+    private static final double MEDIAN = 0.5, P99 = 0.99;
+
+    /** True iff start has been called. */
+    private static boolean _started;
+
+}
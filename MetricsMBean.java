@@ -0,0 +1,53 @@
+package enigma;
+
+/** The management interface through which JMX clients read the metrics
+ *  kept by Metrics.  Times are totals over all events, in milliseconds.
+ *  @author Naman Patel
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted by Machines. */
+    long getCharactersConverted();
+
+    /** Return the number of message lines converted. */
+    long getMessagesConverted();
+
+    /** Return the number of settings lines applied. */
+    long getSettingsApplied();
+
+    /** Return the number of settings lines found in a settings
+     *  cache. */
+    long getSettingsCacheHits();
+
+    /** Return the number of settings lines looked up in a settings
+     *  cache and not found. */
+    long getSettingsCacheMisses();
+
+    /** Return the number of configurations read. */
+    long getConfigurationsRead();
+
+    /** Return the time spent reading configurations. */
+    double getReadConfigMillis();
+
+    /** Return the time spent applying settings lines. */
+    double getSetUpMillis();
+
+    /** Return the time spent converting message lines. */
+    double getConvertMillis();
+
+    /** Return the time spent writing converted message lines. */
+    double getWriteMillis();
+
+    /** Return the time spent taking checkpoints. */
+    double getCheckpointMillis();
+
+    /** Return the time spent in Main.process. */
+    double getProcessMillis();
+
+    /** Return a text report of all the metrics, one per line. */
+    String getReport();
+
+    /** Reset all the metrics to zero. */
+    void reset();
+
+}
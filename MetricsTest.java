@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Naman Patel
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a histogram of events lasting each of NANOS
+     *  nanoseconds. */
+    private Metrics.Histogram histogram(long... nanos) {
+        Metrics.Histogram result = new Metrics.Histogram();
+        for (long n : nanos) {
+            result.record(n);
+        }
+        return result;
+    }
+
+    /** Check that H, a histogram of events lasting a total of TOTAL
+     *  nanoseconds, holds COUNT events. */
+    private void checkTotals(Metrics.Histogram h, long count, long total) {
+        assertEquals(count, h.count());
+        assertEquals(total / 1e6, h.totalMillis(), 1e-9);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkBuckets() {
+        for (int k = 1; k < Long.SIZE - 1; k += 1) {
+            long bound = 1L << k;
+            assertEquals(msg("percentile", "2**%d - 1", k), bound - 1,
+                         histogram(bound - 1).percentile(1));
+            assertEquals(msg("percentile", "2**%d", k), 2 * bound - 1,
+                         histogram(bound).percentile(1));
+        }
+        assertEquals(0, histogram(0).percentile(1));
+        assertEquals(1, histogram(1).percentile(1));
+        assertEquals(Long.MAX_VALUE,
+                     histogram(Long.MAX_VALUE).percentile(1));
+        Metrics.Histogram negative = histogram(-5);
+        checkTotals(negative, 1, 0);
+        assertEquals(0, negative.percentile(1));
+    }
+
+    @Test
+    public void checkPercentiles() {
+        Metrics.Histogram h = histogram(0, -5, 1, 2, 3, 4, 1000);
+        checkTotals(h, 7, 1010);
+        assertEquals(0, h.percentile(0));
+        assertEquals(0, h.percentile(0.25));
+        assertEquals(3, h.percentile(0.5));
+        assertEquals(7, h.percentile(0.8));
+        assertEquals(1023, h.percentile(0.99));
+        assertEquals(1023, h.percentile(1));
+
+        Metrics.Histogram empty = histogram();
+        checkTotals(empty, 0, 0);
+        assertEquals(0, empty.percentile(0.5));
+        h.reset();
+        checkTotals(h, 0, 0);
+        assertEquals(0, h.percentile(0.99));
+        h.record(100);
+        checkTotals(h, 1, 100);
+        assertEquals(127, h.percentile(0.5));
+    }
+
+    @Test
+    public void checkConcurrentRecording() throws InterruptedException {
+        Metrics.Histogram h = new Metrics.Histogram();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t += 1) {
+            int first = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i += 1) {
+                    h.record(first + i % 3);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long total = 0;
+        for (int t = 0; t < 8; t += 1) {
+            threads.get(t).join();
+            for (int i = 0; i < 10000; i += 1) {
+                total += t + i % 3;
+            }
+        }
+        checkTotals(h, 80000, total);
+        assertEquals(15, h.percentile(1));
+    }
+
+    @Test
+    public void checkReport() {
+        Metrics.Histogram h = histogram(1000, 2000000);
+        StringBuilder out = new StringBuilder();
+        h.report(out, "convert");
+        assertEquals(String.format("  %-20s 2, total 2.001 ms, "
+                                   + "p50 < 0.001 ms, p99 < 2.097 ms%n",
+                                   "convert"),
+                     out.toString());
+
+        Metrics metrics = Metrics.INSTANCE;
+        metrics.reset();
+        try {
+            Metrics.CHARACTERS.add(26);
+            Metrics.MESSAGES.add(2);
+            Metrics.SETTINGS_HITS.increment();
+            Metrics.SET_UP.record(500);
+            Metrics.SET_UP.record(1500);
+            Metrics.READ_CONFIG.record(3000000);
+            assertEquals(26, metrics.getCharactersConverted());
+            assertEquals(2, metrics.getMessagesConverted());
+            assertEquals(2, metrics.getSettingsApplied());
+            assertEquals(1, metrics.getSettingsCacheHits());
+            assertEquals(0, metrics.getSettingsCacheMisses());
+            assertEquals(1, metrics.getConfigurationsRead());
+            assertEquals(3.0, metrics.getReadConfigMillis(), 1e-9);
+            assertEquals(0.002, metrics.getSetUpMillis(), 1e-9);
+            String report = metrics.getReport();
+            assertTrue(report, report.contains("characters converted 26"));
+            assertTrue(report, report.contains("1 hits, 0 misses"));
+            assertTrue(report, report.contains(
+                String.format("  %-20s 2, total 0.002 ms", "set up")));
+        } finally {
+            metrics.reset();
+        }
+        assertEquals(0, metrics.getCharactersConverted());
+        assertEquals(0, metrics.getSettingsApplied());
+        assertEquals(0.0, metrics.getReadConfigMillis(), 0);
+    }
+
+    @Test
+    public void checkMBean() throws JMException {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Metrics.register(server);
+        Metrics.INSTANCE.reset();
+        try {
+            Metrics.CHARACTERS.add(40);
+            Metrics.CONVERT.record(4000000);
+            assertEquals(40L, server.getAttribute(name,
+                                                  "CharactersConverted"));
+            assertEquals(4.0, server.getAttribute(name, "ConvertMillis"));
+            assertEquals(Metrics.INSTANCE.getReport(),
+                         server.getAttribute(name, "Report"));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0L, server.getAttribute(name,
+                                                 "CharactersConverted"));
+            assertEquals(0.0, server.getAttribute(name, "ConvertMillis"));
+        } finally {
+            Metrics.INSTANCE.reset();
+        }
+    }
+
+}
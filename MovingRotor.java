@@ -13,10 +13,36 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
-        super(name, perm);
-        _name = name;
-        _permutation = perm;
+        this(name, perm, notches, null);
+    }
+
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, and whose notches are at the positions indicated in NOTCHES,
+     *  with its conversion tables from TABLES (see Rotor). */
+    MovingRotor(String name, Permutation perm, String notches,
+                OffHeapTable.Source tables) {
+        super(name, perm, tables);
         _notches = notches;
+        _notchTable = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            char ch = notches.charAt(i);
+            if (ch != ' ') {
+                _notchTable[perm.alphabet().toInt(ch)] = true;
+            }
+        }
+    }
+
+    /** A copy of ROTOR at the 0 setting, sharing its notches (see
+     *  Rotor.copy). */
+    MovingRotor(MovingRotor rotor) {
+        super(rotor);
+        _notches = rotor._notches;
+        _notchTable = rotor._notchTable;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     /** A string that tells where my notches are.
@@ -27,18 +53,18 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        char[] notchArray = _notches.replaceAll(" ", "").toCharArray();
-        for (char ch : notchArray) {
-            if (setting() == alphabet().toInt(ch)) {
-                return true;
-            }
-        }
-        return false;
+        int posn = setting();
+        return posn >= 0 && posn < _notchTable.length && _notchTable[posn];
+    }
+
+    @Override
+    boolean notchAt(int posn) {
+        return _notchTable[posn];
     }
 
     @Override
     void advance() {
-        set(_permutation.wrap(setting() + 1));
+        set(permutation().wrap(setting() + 1));
     }
 
     @Override
@@ -46,16 +72,10 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** My permutation. */
-    private Permutation _permutation;
-
-    /** My current setting. */
-    private int _setting;
-
-    /** My name. */
-    private String _name;
-
     /** A string of my notches. */
-    private String _notches;
+    private final String _notches;
+
+    /** Entry K is true iff I have a notch at setting K. */
+    private final boolean[] _notchTable;
 
 }
@@ -71,4 +71,28 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkFixedRotorSet() {
+        rotor = new FixedRotor("Beta",
+                               new Permutation(NAVALA.get("Beta"), UPPER));
+        assertEquals(1, rotor.tableRows());
+        checkRotor("Rotor Beta (A)", UPPER_STRING, NAVALA_MAP.get("Beta"));
+        rotor.set(1);
+        checkRotor("Rotor Beta set", UPPER_STRING, NAVALB_MAP.get("Beta"));
+        rotor.set(0);
+        checkRotor("Rotor Beta reset", UPPER_STRING, NAVALA_MAP.get("Beta"));
+    }
+
+    @Test
+    public void checkRotorNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(msg("Rotor VI", "notch at %d", i),
+                         i == 12 || i == 25, rotor.atNotch());
+            rotor.advance();
+        }
+        assertEquals(0, rotor.setting());
+        assertFalse(rotor.atNotch());
+    }
+
 }
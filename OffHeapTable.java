@@ -0,0 +1,343 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A table of conversions held outside the Java heap, in a direct or
+ *  memory-mapped buffer, so that the tables of rotors with large
+ *  alphabets neither crowd the heap nor lengthen garbage collections.
+ *  Each entry is an index in an alphabet, stored in one byte for
+ *  alphabets of up to 256 characters and otherwise in two.  A table
+ *  must fit in one buffer, so alphabets of more than MAX_SIZE
+ *  characters are not tabulated.
+ *
+ *  Tables are built as each rotor is constructed, from a Source that
+ *  allocates them directly or maps them from a file.  In a file, each
+ *  table is preceded by a checksum of the permutation and the number
+ *  of rows from which it was computed, so that the tables need only be
+ *  computed once for a given configuration.
+ *
+ *  Only a rotor's conversion tables, which for a moving rotor grow as
+ *  the square of its alphabet, are moved.  The arrays of its
+ *  Permutation, of one entry per character, stay on the heap.  Tables
+ *  are held in NIO buffers rather than memory segments because each
+ *  fits in one buffer addressed by int, and a buffer is freed with the
+ *  rotor that holds it, so a segment's long offsets and explicit
+ *  lifetime would add nothing.
+ *  @author Naman Patel
+ */
+final class OffHeapTable {
+
+    /** A table of the indices in an alphabet of SIZE characters, held
+     *  in BYTES from its position to its limit. */
+    OffHeapTable(ByteBuffer bytes, int size) {
+        _bytes = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        _wide = entryBytes(size) > 1;
+    }
+
+    /** Return entry K. */
+    int get(int k) {
+        return _wide ? _bytes.getShort(k << 1) & 0xffff
+            : _bytes.get(k) & 0xff;
+    }
+
+    /** Set entry K to VALUE. */
+    void put(int k, int value) {
+        if (_wide) {
+            _bytes.putShort(k << 1, (short) value);
+        } else {
+            _bytes.put(k, (byte) value);
+        }
+    }
+
+    /** Return the number of bytes in each entry of a table for an
+     *  alphabet of SIZE characters. */
+    static int entryBytes(int size) {
+        return size <= 1 << Byte.SIZE ? 1 : 2;
+    }
+
+    /** Set every entry of my first ROWS rows of PERM.size() entries to
+     *  the conversion by a rotor with permutation PERM, or by its inverse
+     *  if INVERSE, at the setting numbered by the row (see Rotor). */
+    private void fill(Permutation perm, int rows, boolean inverse) {
+        int n = perm.size();
+        for (int s = 0; s < rows; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                put(s * n + p, inverse ? Rotor.backward(perm, s, p)
+                    : Rotor.forward(perm, s, p));
+            }
+        }
+    }
+
+    /** Return the number of bytes in a table of ROWS rows for an alphabet
+     *  of SIZE characters. */
+    private static long tableBytes(int size, int rows) {
+        return (long) rows * size * entryBytes(size);
+    }
+
+    /** Return a checksum of PERM, ROWS and INVERSE, which determine the
+     *  contents of a table filled by fill. */
+    private static long checksum(Permutation perm, int rows,
+                                 boolean inverse) {
+        ByteBuffer ints =
+            ByteBuffer.allocate(Integer.BYTES * (perm.size() + 3));
+        ints.putInt(perm.size()).putInt(rows).putInt(inverse ? 1 : 0);
+        for (int p = 0; p < perm.size(); p += 1) {
+            ints.putInt(perm.permute(p));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(ints.array());
+        return crc.getValue();
+    }
+
+    /** Return a source of tables held in direct buffers. */
+    static Source direct() {
+        return new Source() {
+            @Override
+            OffHeapTable table(Permutation perm, int rows,
+                               boolean inverse) {
+                if (perm.size() > MAX_SIZE) {
+                    return null;
+                }
+                try {
+                    OffHeapTable result =
+                        new OffHeapTable(ByteBuffer.allocateDirect(
+                                             (int) tableBytes(perm.size(),
+                                                              rows)),
+                                         perm.size());
+                    result.fill(perm, rows, inverse);
+                    return result;
+                } catch (OutOfMemoryError excp) {
+                    throw error("no room for rotor tables off the heap; "
+                                + "raise -XX:MaxDirectMemorySize or map "
+                                + "them from a file");
+                }
+            }
+        };
+    }
+
+    /** Return a source of tables mapped into memory from the file FILE.
+     *  Each table that FILE already holds, in order, is used as it is;
+     *  from the first that it does not, FILE is replaced atomically on
+     *  finishing by one that holds them all. */
+    static Source mapped(Path file) {
+        return new Mapped(file);
+    }
+
+    /** A source of the conversion tables of rotors (see Rotor), which
+     *  are taken from it one after another as the rotors are
+     *  constructed. */
+    abstract static class Source {
+
+        /** Return a table of the conversions by a rotor with permutation
+         *  PERM, or by its inverse if INVERSE, at each of its first ROWS
+         *  settings, indexed by SETTING * PERM.size() + INPUT.  Returns
+         *  null if PERM has more than MAX_SIZE characters. */
+        abstract OffHeapTable table(Permutation perm, int rows,
+                                    boolean inverse);
+
+        /** Finish taking tables from me.  The tables already taken remain
+         *  valid. */
+        void finish() {
+        }
+    }
+
+    /** A source of tables mapped from a file: see mapped. */
+    private static final class Mapped extends Source {
+
+        /** A source of tables mapped from FILE. */
+        Mapped(Path file) {
+            _file = file;
+            try {
+                if (Files.isRegularFile(file)) {
+                    FileChannel channel =
+                        FileChannel.open(file, StandardOpenOption.READ);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    read(channel, header, 0);
+                    header.flip();
+                    if (header.remaining() == HEADER_BYTES
+                        && header.getInt() == MAGIC
+                        && header.getInt() == VERSION) {
+                        _old = channel;
+                    } else {
+                        channel.close();
+                    }
+                }
+            } catch (IOException excp) {
+                throw failure(excp);
+            }
+        }
+
+        @Override
+        OffHeapTable table(Permutation perm, int rows, boolean inverse) {
+            int n = perm.size();
+            if (n > MAX_SIZE) {
+                return null;
+            }
+            long bytes = tableBytes(n, rows),
+                checksum = checksum(perm, rows, inverse),
+                start = _position + Long.BYTES;
+            try {
+                if (_old != null) {
+                    ByteBuffer record = ByteBuffer.allocate(Long.BYTES);
+                    if (_old.size() >= start + bytes) {
+                        read(_old, record, _position);
+                    }
+                    if (!record.hasRemaining()
+                        && record.getLong(0) == checksum) {
+                        _position = start + bytes;
+                        return new OffHeapTable(
+                            _old.map(FileChannel.MapMode.READ_ONLY, start,
+                                     bytes), n);
+                    }
+                }
+                if (_new == null) {
+                    startWriting();
+                }
+                ByteBuffer record = ByteBuffer.allocate(Long.BYTES);
+                record.putLong(checksum).flip();
+                while (record.hasRemaining()) {
+                    _new.write(record, _position + record.position());
+                }
+                OffHeapTable result =
+                    new OffHeapTable(_new.map(FileChannel.MapMode.READ_WRITE,
+                                              start, bytes), n);
+                result.fill(perm, rows, inverse);
+                _position = start + bytes;
+                return result;
+            } catch (IOException excp) {
+                abandon();
+                throw failure(excp);
+            }
+        }
+
+        @Override
+        void finish() {
+            try {
+                if (_old != null) {
+                    _old.close();
+                }
+                if (_new != null) {
+                    _new.force(true);
+                    _new.close();
+                    Files.move(_temp, _file, StandardCopyOption.ATOMIC_MOVE,
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException excp) {
+                abandon();
+                throw failure(excp);
+            }
+        }
+
+        /** Start writing the replacement for my file in a temporary file,
+         *  beginning with the header and tables of my file that have been
+         *  used, if any, and stop reading my file. */
+        private void startWriting() throws IOException {
+            Path dir = _file.toAbsolutePath().getParent();
+            _temp = Files.createTempFile(dir, ".enigma", ".tmp");
+            _new = FileChannel.open(_temp, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+            if (_old != null) {
+                for (long done = 0; done < _position;) {
+                    done += _old.transferTo(done, _position - done, _new);
+                }
+                _old.close();
+                _old = null;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    _new.write(header, header.position());
+                }
+            }
+        }
+
+        /** Read from CHANNEL at POSITION into BUFFER until it is full or
+         *  the end of CHANNEL is reached. */
+        private static void read(FileChannel channel, ByteBuffer buffer,
+                                 long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return;
+                }
+            }
+        }
+
+        /** Close my files, deleting the temporary file, if any.  As this
+         *  follows a failure, failures here are ignored. */
+        private void abandon() {
+            try {
+                try {
+                    if (_old != null) {
+                        _old.close();
+                    }
+                } finally {
+                    try {
+                        if (_new != null) {
+                            _new.close();
+                        }
+                    } finally {
+                        if (_temp != null) {
+                            Files.deleteIfExists(_temp);
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                return;
+            } finally {
+                _old = _new = null;
+                _temp = null;
+            }
+        }
+
+        /** Return the error reporting EXCP. */
+        private EnigmaException failure(IOException excp) {
+            return error("could not map rotor tables in %s: %s", _file,
+                         excp.getMessage());
+        }
+
+        /** The file from which tables are mapped. */
+        private final Path _file;
+
+        /** My file, while its tables are used as they are, or null. */
+        private FileChannel _old;
+
+        /** The temporary file replacing my file, or null if none is being
+         *  written. */
+        private Path _temp;
+
+        /** A channel on _temp, or null. */
+        private FileChannel _new;
+
+        /** The offset in my file of the next table's record. */
+        private long _position = HEADER_BYTES;
+    }
+
+    /** Largest alphabet whose tables are held off the heap: the largest
+     *  for which a table of two-byte entries fits in a buffer. */
+    static final int MAX_SIZE = 32767;
+
+    /** Marks a file of tables ("ENGT"). */
+    private static final int MAGIC = 0x454e4754;
+
+    /** Version of the file format. */
+    private static final int VERSION = 2;
+
+    /** Bytes in the header of a file of tables. */
+    private static final int HEADER_BYTES = 8;
+
+    /** My entries. */
+    private final ByteBuffer _bytes;
+
+    /** True iff my entries are two bytes long. */
+    private final boolean _wide;
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the OffHeapTable class.
+ *  @author Naman Patel
+ */
+public class OffHeapTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an alphabet of SIZE characters. */
+    private Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append((char) (0x100 + i));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a reflector, a fixed rotor and a moving rotor for ALPHA,
+     *  with permutations chosen using a Random seeded with SEED, taking
+     *  their conversion tables from TABLES, if it is not null. */
+    private List<Rotor> rotors(Alphabet alpha, long seed,
+                               OffHeapTable.Source tables) {
+        Random random = new Random(seed);
+        int n = alpha.size();
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        int[] pairs = new int[n];
+        for (int i = 0; i < n; i += 2) {
+            pairs[order.get(i)] = order.get(i + 1);
+            pairs[order.get(i + 1)] = order.get(i);
+        }
+        ArrayList<Rotor> result = new ArrayList<>();
+        result.add(new Reflector("R", new Permutation(pairs, alpha),
+                                 tables));
+        for (int k = 0; k < 2; k += 1) {
+            Collections.shuffle(order, random);
+            int[] table = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                table[i] = order.get(i);
+            }
+            Permutation perm = new Permutation(table, alpha);
+            result.add(k == 0 ? new FixedRotor("F", perm, tables)
+                       : new MovingRotor("M", perm,
+                                         String.valueOf(alpha.toChar(0)),
+                                         tables));
+        }
+        return result;
+    }
+
+    /** Check that each of ROTORS converts as the corresponding member of
+     *  EXPECTED at the settings sampled, and that copies do too. */
+    private void checkConversions(List<Rotor> expected, List<Rotor> rotors) {
+        for (int r = 0; r < rotors.size(); r += 1) {
+            Rotor want = expected.get(r).copy(), got = rotors.get(r).copy();
+            int n = got.size();
+            int settings = got.reflecting() ? 1 : n;
+            for (int s = 0; s < settings; s += 1 + n / 7) {
+                want.set(s);
+                got.set(s);
+                for (int p = 0; p < n; p += 1) {
+                    assertEquals(msg(got.name(), "forward %d at %d", p, s),
+                                 want.convertForward(p),
+                                 got.convertForward(p));
+                    assertEquals(msg(got.name(), "backward %d at %d", p, s),
+                                 want.convertBackward(p),
+                                 got.convertBackward(p));
+                }
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkEntries() {
+        assertEquals(1, OffHeapTable.entryBytes(256));
+        assertEquals(2, OffHeapTable.entryBytes(257));
+        OffHeapTable narrow =
+            new OffHeapTable(ByteBuffer.allocateDirect(4), 256);
+        narrow.put(3, 255);
+        narrow.put(0, 7);
+        assertEquals(255, narrow.get(3));
+        assertEquals(7, narrow.get(0));
+        OffHeapTable wide =
+            new OffHeapTable(ByteBuffer.allocateDirect(8), 40000);
+        wide.put(3, 39999);
+        wide.put(2, 256);
+        assertEquals(39999, wide.get(3));
+        assertEquals(256, wide.get(2));
+    }
+
+    /** Return the rotors(ALPHA, SEED, ...) with their tables mapped
+     *  from FILE, checking that they convert as those on the heap. */
+    private List<Rotor> mapped(Alphabet alpha, long seed, Path file) {
+        OffHeapTable.Source tables = OffHeapTable.mapped(file);
+        List<Rotor> rotors = rotors(alpha, seed, tables);
+        tables.finish();
+        checkConversions(rotors(alpha, seed, null), rotors);
+        return rotors;
+    }
+
+    @Test
+    public void checkAllocated() {
+        for (int size : new int[] { 26, 300 }) {
+            Alphabet alpha = size == 26 ? UPPER : alphabet(size);
+            checkConversions(rotors(alpha, size, null),
+                             rotors(alpha, size, OffHeapTable.direct()));
+        }
+    }
+
+    @Test
+    public void checkMapped() throws IOException {
+        Alphabet alpha = alphabet(300);
+        Path file = Files.createTempFile("enigma", ".tables");
+        try {
+            mapped(alpha, 1, file);
+            long written = Files.getLastModifiedTime(file).toMillis();
+            byte[] contents = Files.readAllBytes(file);
+
+            mapped(alpha, 1, file);
+            assertEquals(written, Files.getLastModifiedTime(file).toMillis());
+            assertArrayEquals(contents, Files.readAllBytes(file));
+
+            mapped(alpha, 2, file);
+            assertFalse(Arrays.equals(contents, Files.readAllBytes(file)));
+            byte[] changed = Files.readAllBytes(file);
+
+            OffHeapTable.Source tables = OffHeapTable.mapped(file);
+            List<Rotor> rotors = rotors(alpha, 2, tables);
+            rotors.addAll(rotors(alpha, 3, tables));
+            tables.finish();
+            List<Rotor> expected = rotors(alpha, 2, null);
+            expected.addAll(rotors(alpha, 3, null));
+            checkConversions(expected, rotors);
+            byte[] extended = Files.readAllBytes(file);
+            assertArrayEquals(changed,
+                              Arrays.copyOf(extended, changed.length));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package enigma;
 
-import java.util.HashMap;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -16,41 +18,85 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-        String finalCycles = cycles;
-        if (!(_cycles.equals(""))) {
-            finalCycles = _cycles.replaceAll(" ", "");
-            finalCycles = finalCycles.substring(1, finalCycles.length() - 1);
-            cycleArrays = finalCycles.split("\\)\\(");
-            for (String x : cycleArrays) {
-                char[] charCycleArray = x.toCharArray();
-                for (int i = 0; i < x.length(); i++) {
-                    forPermMap.put(
-                            charCycleArray[i], charCycleArray[
-                                    (i + 1) % x.length()]);
+        _forward = new int[alphabet.size()];
+        _backward = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+            _backward[i] = i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char ch = cycles.charAt(i);
+            if (ch == '(') {
+                if (start >= 0) {
+                    throw error("malformed cycles: %s", cycles);
                 }
-                for (int i = 0; i < x.length(); i++) {
-                    if (i == 0) {
-                        backPermMap.put(
-                                charCycleArray[0],
-                                charCycleArray[x.length() - 1]);
-                    } else {
-                        backPermMap.put(
-                                charCycleArray[i], charCycleArray[i - 1]);
-                    }
+                start = i + 1;
+            } else if (ch == ')') {
+                if (start < 0) {
+                    throw error("malformed cycles: %s", cycles);
                 }
+                addCycle(cycles, start, i);
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(ch)) {
+                throw error("malformed cycles: %s", cycles);
             }
         }
+        if (start >= 0) {
+            throw error("malformed cycles: %s", cycles);
+        }
+    }
 
-        for (char ch : _alphabet.charArray) {
-            if (!(forPermMap.containsKey(ch))) {
-                forPermMap.put(ch, ch);
-                backPermMap.put(ch, ch);
+    /** Set this Permutation to the one that maps each index K of ALPHABET
+     *  to FORWARD[K].  FORWARD must be a permutation of
+     *  0 .. ALPHABET.size()-1; it is copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _cycles = null;
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _forward = forward.clone();
+        _backward = new int[forward.length];
+        Arrays.fill(_backward, -1);
+        for (int i = 0; i < forward.length; i += 1) {
+            int p = forward[i];
+            if (p < 0 || p >= forward.length || _backward[p] >= 0) {
+                throw error("permutation table is not a permutation");
             }
+            _backward[p] = i;
+        }
+    }
+
+    /** Add the cycle formed by the non-whitespace characters of
+     *  CYCLES[FROM .. TO-1] to my forward and backward tables. */
+    private void addCycle(String cycles, int from, int to) {
+        int first = -1, prev = -1;
+        for (int i = from; i < to; i += 1) {
+            char ch = cycles.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int p = _alphabet.toInt(ch);
+            if (prev < 0) {
+                first = p;
+            } else {
+                _forward[prev] = p;
+                _backward[p] = prev;
+            }
+            prev = p;
+        }
+        if (prev >= 0) {
+            _forward[prev] = first;
+            _backward[first] = prev;
         }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -66,28 +112,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int x = wrap(p);
-        char y = permute(_alphabet.toChar(x));
-        return _alphabet.toInt(y);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int x = wrap(c);
-        char y = invert(_alphabet.toChar(x));
-        return _alphabet.toInt(y);
+        return _backward[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return forPermMap.get(p);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return backPermMap.get(c);
+        return _alphabet.toChar(_backward[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -96,18 +138,17 @@ class Permutation {
     }
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
-
-    /** String version of this permutation. */
-    private String _cycles;
+    private final Alphabet _alphabet;
 
-    /** String array of the cycles of this permutation. */
-    private String[] cycleArrays;
+    /** String version of this permutation, or null if it was given as a
+     *  table. */
+    private final String _cycles;
 
-    /** Hashmap of the forward mappings this permutation. */
-    private HashMap<Character, Character> forPermMap = new HashMap<>();
+    /** Forward mapping of this permutation: index P maps to
+     *  _forward[P]. */
+    private final int[] _forward;
 
-    /** Hashmap of the backward mappings this permutation. */
-    private HashMap<Character, Character> backPermMap = new HashMap<>();
+    /** Inverse mapping of this permutation: index C maps to
+     *  _backward[C]. */
+    private final int[] _backward;
 }
-
@@ -51,4 +51,20 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name + " (A)", UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkWrappedIndices() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals(perm.permute(0), perm.permute(26));
+        assertEquals(perm.permute(25), perm.permute(-1));
+        assertEquals(perm.invert(3), perm.invert(-23));
+    }
+
 }
@@ -10,10 +10,23 @@ class Reflector extends FixedRotor {
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is PERM. */
     Reflector(String name, Permutation perm) {
-        super(name, perm);
-        _name = name;
-        _permutation = perm;
-        _setting = 0;
+        this(name, perm, null);
+    }
+
+    /** A non-moving rotor named NAME whose permutation at the 0 setting
+     *  is PERM, with its conversion tables from TABLES (see Rotor). */
+    Reflector(String name, Permutation perm, OffHeapTable.Source tables) {
+        super(name, perm, tables);
+    }
+
+    /** A copy of ROTOR (see Rotor.copy). */
+    Reflector(Reflector rotor) {
+        super(rotor);
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
     }
 
     @Override
@@ -27,12 +40,4 @@ class Reflector extends FixedRotor {
             throw error("reflector has only one position");
         }
     }
-    /** My permutation. */
-    private Permutation _permutation;
-
-    /** My current setting. */
-    private int _setting;
-
-    /** My name. */
-    private String _name;
 }
@@ -2,16 +2,68 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor's
+ *  wiring (its name, permutation, notches and conversion tables) never
+ *  changes after construction and is shared by all its copies; only the
+ *  setting belongs to an individual rotor.
  *  @author Naman Patel
  */
 class Rotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
+        this(name, perm, null);
+    }
+
+    /** A rotor named NAME whose permutation is given by PERM.  If TABLES
+     *  is not null, my conversion tables are taken from it, off the
+     *  heap, rather than built in arrays, unless it has none for an
+     *  alphabet as large as PERM's. */
+    Rotor(String name, Permutation perm, OffHeapTable.Source tables) {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        int n = perm.size();
+        _rows = rotates() ? n : 1;
+        if (tables != null) {
+            _forwardOffHeap = tables.table(perm, _rows, false);
+            _backwardOffHeap = tables.table(perm, _rows, true);
+        } else {
+            _forwardOffHeap = _backwardOffHeap = null;
+        }
+        if (_forwardOffHeap == null && n <= MAX_TABLE_SIZE) {
+            int[] forward = new int[_rows * n], backward = new int[_rows * n];
+            for (int s = 0; s < _rows; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    forward[s * n + p] = forward(perm, s, p);
+                    backward[s * n + p] = backward(perm, s, p);
+                }
+            }
+            _forwardTable = forward;
+            _backwardTable = backward;
+        } else {
+            _forwardTable = _backwardTable = null;
+        }
+    }
+
+    /** A rotor at the 0 setting with the same name, permutation and
+     *  conversion tables as ROTOR, which it shares with ROTOR. */
+    Rotor(Rotor rotor) {
+        _name = rotor._name;
+        _permutation = rotor._permutation;
+        _setting = 0;
+        _rows = rotor._rows;
+        _forwardTable = rotor._forwardTable;
+        _backwardTable = rotor._backwardTable;
+        _forwardOffHeap = rotor._forwardOffHeap;
+        _backwardOffHeap = rotor._backwardOffHeap;
+    }
+
+    /** Return a new rotor like me, but at the 0 setting.  The copy
+     *  shares my immutable wiring, so copying is cheap and the copy can
+     *  be used independently of me, e.g. in another thread. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Return my name. */
@@ -51,28 +103,89 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = posn;
+        assign(posn);
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = _permutation.alphabet().toInt(cposn);
+        assign(_permutation.alphabet().toInt(cposn));
+    }
+
+    /** Record POSN as my setting, along with the offset of its row in
+     *  my conversion tables, or the shift to apply to the 0 row if it
+     *  has none. */
+    private void assign(int posn) {
+        _setting = posn;
+        int row = _permutation.wrap(posn);
+        if (row < _rows) {
+            _tableOffset = row * _permutation.size();
+            _shift = 0;
+        } else {
+            _tableOffset = 0;
+            _shift = row;
+        }
+    }
+
+    /** Return the number of settings tabulated in my conversion tables:
+     *  all of them if I rotate, and otherwise only the 0 setting, as the
+     *  conversions at setting S are those at 0 with input and output
+     *  shifted by S. */
+    int tableRows() {
+        return _rows;
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int x = _permutation.wrap(p + setting());
-        int y = _permutation.permute(x);
-        return _permutation.wrap(y - setting());
+        int n = size();
+        if (p >= 0 && p < n) {
+            int x = p + _shift < n ? p + _shift : p + _shift - n;
+            if (_forwardTable != null) {
+                return unshift(_forwardTable[_tableOffset + x], n);
+            }
+            if (_forwardOffHeap != null) {
+                return unshift(_forwardOffHeap.get(_tableOffset + x), n);
+            }
+        }
+        return forward(_permutation, setting(), p);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int x = _permutation.wrap(e + setting());
-        int y = _permutation.invert(x);
-        return _permutation.wrap(y - setting());
+        int n = size();
+        if (e >= 0 && e < n) {
+            int x = e + _shift < n ? e + _shift : e + _shift - n;
+            if (_backwardTable != null) {
+                return unshift(_backwardTable[_tableOffset + x], n);
+            }
+            if (_backwardOffHeap != null) {
+                return unshift(_backwardOffHeap.get(_tableOffset + x), n);
+            }
+        }
+        return backward(_permutation, setting(), e);
+    }
+
+    /** Return Y, an entry of one of my tables, less my shift, modulo
+     *  N, my alphabet size. */
+    private int unshift(int y, int n) {
+        return y >= _shift ? y - _shift : y - _shift + n;
+    }
+
+    /** Return the conversion of P by a rotor with permutation PERM at
+     *  setting S. */
+    static int forward(Permutation perm, int s, int p) {
+        int x = perm.wrap(p + s);
+        int y = perm.permute(x);
+        return perm.wrap(y - s);
+    }
+
+    /** Return the conversion of E by the inverse of a rotor with
+     *  permutation PERM at setting S. */
+    static int backward(Permutation perm, int s, int e) {
+        int x = perm.wrap(e + s);
+        int y = perm.invert(x);
+        return perm.wrap(y - s);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -81,6 +194,12 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be at a notch at setting POSN, where
+     *  0 <= POSN < size(). */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -94,8 +213,35 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** My current setting. */
     private int _setting;
+
+    /** The number of settings tabulated in my conversion tables. */
+    private final int _rows;
+
+    /** Largest alphabet size for which conversions are tabulated. */
+    static final int MAX_TABLE_SIZE = 256;
+
+    /** Forward conversions indexed by SETTING * size() + INPUT, or null
+     *  if my alphabet is too large to tabulate or my tables are off the
+     *  heap. */
+    private final int[] _forwardTable;
+
+    /** Backward conversions indexed by SETTING * size() + INPUT, or null
+     *  if my alphabet is too large to tabulate or my tables are off the
+     *  heap. */
+    private final int[] _backwardTable;
+
+    /** Forward and backward conversions, indexed as for _forwardTable
+     *  and _backwardTable, held off the heap, or null. */
+    private final OffHeapTable _forwardOffHeap, _backwardOffHeap;
+
+    /** Offset of the row for my current setting in the tables above. */
+    private int _tableOffset;
+
+    /** My current setting if it is not tabulated, by which I shift
+     *  conversions through the 0 row of my tables, or else 0. */
+    private int _shift;
 }
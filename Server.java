@@ -0,0 +1,716 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A server that converts messages for many concurrent clients with
+ *  configurations loaded once, so that each request need not pay for
+ *  starting a JVM and parsing a configuration file.
+ *
+ *  Clients connect to a loopback TCP port or a Unix domain socket and
+ *  send any number of requests on each connection, each answered in
+ *  turn.  A request is a four-byte big-endian length, N, followed by N
+ *  bytes of UTF-8 text.  The first line of the text names one of the
+ *  configuration files being served, as given on the command line (an
+ *  empty line selects the first of them), and the rest is in the format
+ *  of an input file.  The response is a four-byte status, 0 for success
+ *  and 1 for an error, a four-byte length, M, and M bytes of UTF-8 text:
+ *  either what would have been written to the output file, or the error
+ *  message.
+ *
+ *  Connections are non-blocking and shared among a few event loops,
+ *  each a thread waiting on a Selector for any of its connections to
+ *  become readable or writable, so that an idle connection costs a few
+ *  dozen bytes rather than a thread, and tens of thousands may be open
+ *  at once.  A loop reads each request into a buffer of its size and
+ *  hands it to a fixed pool of worker threads, one per processor, to
+ *  convert; it then writes the response as the client accepts it.
+ *
+ *  Memory is bounded by two budgets shared by all connections.  A
+ *  request is not read until it fits within the first, of
+ *  MAX_BYTES_IN_FLIGHT / (1 + RESPONSE_FACTOR) bytes, and is not
+ *  converted until its output fits within the second, the rest of
+ *  MAX_BYTES_IN_FLIGHT.  The output of a request is written into a
+ *  buffer of RESPONSE_FACTOR times its size, which is enough for any
+ *  output it can produce, and sent from there.  A connection waiting
+ *  for either budget is not read meanwhile, so its client is held back
+ *  by TCP flow control.  Since a request's input space is released
+ *  once it is converted, and its output space once it is sent, every
+ *  request waiting for space will get it, and a connection that does
+ *  not send a request body or accept a response within the timeout is
+ *  dropped, so that slow clients cannot hold space indefinitely.
+ *  @author Naman Patel
+ */
+class Server {
+
+    /** A server of conversions with the configurations in CONFIGS,
+     *  indexed by name, that drops a client that has not sent a request
+     *  body or accepted a response within TIMEOUT milliseconds. */
+    Server(Map<String, Main> configs, long timeout) {
+        _configs = configs;
+        _default = configs.values().iterator().next();
+        _timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+        int processors = Runtime.getRuntime().availableProcessors();
+        _workers = Executors.newFixedThreadPool(processors);
+        _loops = new EventLoop[Math.min(MAX_EVENT_LOOPS, processors)];
+        _requestBytes = new Semaphore(MAX_REQUEST_BYTES);
+        _responseBytes = new Semaphore(MAX_BYTES_IN_FLIGHT
+                                       - MAX_REQUEST_BYTES);
+    }
+
+    /** Serve requests on ADDRESS, a loopback TCP port number or the path
+     *  of a Unix domain socket, until the process is killed.  The address
+     *  bound is reported on the standard error, so that a server on port
+     *  0 can be found. */
+    void serve(String address) {
+        try (ServerSocketChannel server = open(address)) {
+            System.err.printf("Serving on %s%n", server.getLocalAddress());
+            serve(server);
+        } catch (IOException excp) {
+            throw error("could not serve on %s: %s", address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Serve requests on the connections accepted by SERVER until it is
+     *  closed. */
+    void serve(ServerSocketChannel server) throws IOException {
+        try {
+            for (int i = 0; i < _loops.length; i += 1) {
+                _loops[i] = new EventLoop(i);
+            }
+            for (int i = 0; true; i = (i + 1) % _loops.length) {
+                SocketChannel client = server.accept();
+                client.configureBlocking(false);
+                _loops[i].add(client);
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } finally {
+            for (EventLoop loop : _loops) {
+                if (loop != null) {
+                    loop.stop();
+                }
+            }
+            _workers.shutdownNow();
+        }
+    }
+
+    /** Return a server socket bound to ADDRESS, a loopback TCP port
+     *  number or the path of a Unix domain socket.  A socket left at that
+     *  path by an earlier server is replaced. */
+    static ServerSocketChannel open(String address) throws IOException {
+        SocketAddress local;
+        ServerSocketChannel result;
+        if (address.matches("\\d+")) {
+            local = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          Integer.parseInt(address));
+            result = ServerSocketChannel.open();
+        } else {
+            Path path = Paths.get(address);
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)
+                && Files.readAttributes(path, BasicFileAttributes.class,
+                                        LinkOption.NOFOLLOW_LINKS)
+                   .isOther()) {
+                Files.delete(path);
+            }
+            local = UnixDomainSocketAddress.of(path);
+            result = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        }
+        try {
+            result.bind(local, BACKLOG);
+        } catch (IOException excp) {
+            result.close();
+            throw excp;
+        }
+        return result;
+    }
+
+    /** Let every event loop retry the connections waiting for space. */
+    private void spaceFreed() {
+        for (EventLoop loop : _loops) {
+            if (loop != null) {
+                loop.wakeup();
+            }
+        }
+    }
+
+    /** A thread serving the connections registered with its Selector. */
+    private class EventLoop implements Runnable {
+
+        /** A new event loop, numbered K, running on its own thread. */
+        EventLoop(int k) throws IOException {
+            _selector = Selector.open();
+            _sweep = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_SWEEP),
+                              Math.min(TimeUnit.SECONDS.toNanos(1),
+                                       _timeout / 4));
+            _thread = new Thread(this, "enigma-server-" + k);
+            _thread.start();
+        }
+
+        /** Start serving CLIENT, a non-blocking channel. */
+        void add(SocketChannel client) {
+            execute(() -> {
+                try {
+                    client.register(_selector, SelectionKey.OP_READ,
+                                    new Connection(this, client));
+                } catch (IOException excp) {
+                    closeQuietly(client);
+                }
+            });
+        }
+
+        /** Run TASK on my thread. */
+        void execute(Runnable task) {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+
+        /** Interrupt my wait for events. */
+        void wakeup() {
+            _selector.wakeup();
+        }
+
+        /** Close my connections and wait for my thread to end. */
+        void stop() {
+            _stopped = true;
+            _selector.wakeup();
+            try {
+                _thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Queue CONNECTION to be retried when space is freed. */
+        void await(Connection connection) {
+            _waiting.add(connection);
+        }
+
+        @Override
+        public void run() {
+            long sweepMillis = TimeUnit.NANOSECONDS.toMillis(_sweep);
+            long nextSweep = System.nanoTime() + _sweep;
+            try {
+                while (!_stopped) {
+                    _selector.select(sweepMillis);
+                    for (Runnable task = _tasks.poll(); task != null;
+                         task = _tasks.poll()) {
+                        task.run();
+                    }
+                    for (SelectionKey key : _selector.selectedKeys()) {
+                        Connection connection =
+                            (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.readable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.writable();
+                        }
+                    }
+                    _selector.selectedKeys().clear();
+                    while (!_waiting.isEmpty()
+                           && _waiting.peek().proceed()) {
+                        _waiting.poll();
+                    }
+                    long now = System.nanoTime();
+                    if (now - nextSweep >= 0) {
+                        expire(now);
+                        nextSweep = now + _sweep;
+                    }
+                }
+            } catch (IOException excp) {
+                System.err.printf("Server stopped: %s%n", excp.getMessage());
+            } finally {
+                for (SelectionKey key : _selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                closeQuietly(_selector);
+            }
+        }
+
+        /** Drop the connections whose deadlines are before NOW. */
+        private void expire(long now) {
+            ArrayList<Connection> expired = new ArrayList<>();
+            for (SelectionKey key : _selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection.expired(now)) {
+                    expired.add(connection);
+                }
+            }
+            for (Connection connection : expired) {
+                connection.close();
+            }
+        }
+
+        /** Connections waiting for space, in order of arrival. */
+        private final ArrayDeque<Connection> _waiting = new ArrayDeque<>();
+
+        /** Tasks from other threads to run on mine. */
+        private final ConcurrentLinkedQueue<Runnable> _tasks =
+            new ConcurrentLinkedQueue<>();
+
+        /** Reports which of my connections are ready. */
+        private final Selector _selector;
+
+        /** Nanoseconds between checks for expired connections. */
+        private final long _sweep;
+
+        /** My thread. */
+        private final Thread _thread;
+
+        /** True once I have been told to stop. */
+        private volatile boolean _stopped;
+    }
+
+    /** The state of one client's connection, used only on the thread of
+     *  its EventLoop. */
+    private class Connection {
+
+        /** Serve CLIENT on LOOP. */
+        Connection(EventLoop loop, SocketChannel client) {
+            _loop = loop;
+            _client = client;
+            _header.limit(Integer.BYTES);
+        }
+
+        /** Read what is available of the request in progress. */
+        void readable() {
+            try {
+                if (_state == HEADER) {
+                    if (_client.read(_header) < 0) {
+                        close();
+                    } else if (!_header.hasRemaining()) {
+                        _length = _header.getInt(0);
+                        if (_length < 0 || _length > MAX_REQUEST_SIZE) {
+                            _closing = true;
+                            respond(ERROR, utf8(String.format(
+                                "request of %d bytes is too long",
+                                _length)));
+                        } else {
+                            _state = REQUEST_SPACE;
+                            proceedOrWait();
+                        }
+                    }
+                } else if (_state == BODY) {
+                    if (_client.read(_request) < 0) {
+                        close();
+                    } else if (!_request.hasRemaining()) {
+                        _state = RESPONSE_SPACE;
+                        proceedOrWait();
+                    }
+                }
+            } catch (IOException excp) {
+                close();
+            }
+        }
+
+        /** Write what the client will accept of the response in
+         *  progress. */
+        void writable() {
+            try {
+                _client.write(_response);
+            } catch (IOException excp) {
+                close();
+                return;
+            }
+            if (_response[0].hasRemaining() || _response[1].hasRemaining()) {
+                interest(SelectionKey.OP_WRITE);
+                return;
+            }
+            _response = null;
+            releaseResponse();
+            if (_closing) {
+                close();
+                return;
+            }
+            _state = HEADER;
+            _deadline = 0;
+            _header.clear().limit(Integer.BYTES);
+            interest(SelectionKey.OP_READ);
+        }
+
+        /** Try to take the space my request needs next, returning true
+         *  if I have it and have moved on. */
+        boolean proceed() {
+            if (_state == REQUEST_SPACE) {
+                if (!_requestBytes.tryAcquire(_length)) {
+                    return false;
+                }
+                _request = ByteBuffer.allocate(_length);
+                _state = BODY;
+                _deadline = System.nanoTime() + _timeout;
+                interest(SelectionKey.OP_READ);
+                if (_length > 0) {
+                    return true;
+                }
+                _state = RESPONSE_SPACE;
+            }
+            if (_state == RESPONSE_SPACE) {
+                int capacity = RESPONSE_FACTOR * _length;
+                if (!_responseBytes.tryAcquire(capacity)) {
+                    return false;
+                }
+                _reserved = capacity;
+                _state = CONVERTING;
+                _deadline = 0;
+                interest(0);
+                ByteBuffer request = _request.flip();
+                _workers.execute(() -> convert(this, request, capacity));
+            }
+            return true;
+        }
+
+        /** Proceed if there is space, and otherwise stop reading and
+         *  wait for it. */
+        void proceedOrWait() {
+            if (!proceed()) {
+                interest(0);
+                _loop.await(this);
+            }
+        }
+
+        /** Release the input space of my converted request and send its
+         *  response, with status STATUS and contents BODY. */
+        void converted(int status, ByteBuffer body) {
+            if (_state != CONVERTING) {
+                return;
+            }
+            releaseRequest();
+            respond(status, body);
+        }
+
+        /** Start sending the response with status STATUS and contents the
+         *  remaining bytes of BODY. */
+        void respond(int status, ByteBuffer body) {
+            _header.clear();
+            _header.putInt(status).putInt(body.remaining()).flip();
+            _response = new ByteBuffer[] { _header, body };
+            _state = RESPONDING;
+            _deadline = System.nanoTime() + _timeout;
+            writable();
+        }
+
+        /** Return true iff I have been waiting for my client past my
+         *  deadline at time NOW. */
+        boolean expired(long now) {
+            return _deadline != 0 && now - _deadline > 0;
+        }
+
+        /** Close my connection and release the space I hold. */
+        void close() {
+            _state = CLOSED;
+            _deadline = 0;
+            SelectionKey key = _client.keyFor(_loop._selector);
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(_client);
+            releaseRequest();
+            releaseResponse();
+        }
+
+        /** Release the space held by my request, if any. */
+        private void releaseRequest() {
+            if (_request != null) {
+                _request = null;
+                _requestBytes.release(_length);
+                spaceFreed();
+            }
+        }
+
+        /** Release the space held for my response, if any. */
+        private void releaseResponse() {
+            if (_reserved > 0) {
+                _responseBytes.release(_reserved);
+                _reserved = 0;
+                spaceFreed();
+            }
+        }
+
+        /** Wait for the events OPS on my channel. */
+        private void interest(int ops) {
+            SelectionKey key = _client.keyFor(_loop._selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(ops);
+            }
+        }
+
+        /** The loop serving me. */
+        private final EventLoop _loop;
+
+        /** My client's end of the connection. */
+        private final SocketChannel _client;
+
+        /** The header of the request being read or response being
+         *  sent. */
+        private final ByteBuffer _header =
+            ByteBuffer.allocate(2 * Integer.BYTES);
+
+        /** What I am doing: one of HEADER, REQUEST_SPACE, BODY,
+         *  RESPONSE_SPACE, CONVERTING, RESPONDING and CLOSED. */
+        private int _state = HEADER;
+
+        /** Length of the current request. */
+        private int _length;
+
+        /** The body of the current request, or null if I hold no space
+         *  for it. */
+        private ByteBuffer _request;
+
+        /** Bytes reserved for the output of the current request. */
+        private int _reserved;
+
+        /** The header and body of the response being sent. */
+        private ByteBuffer[] _response;
+
+        /** True iff I am to close after sending my response. */
+        private boolean _closing;
+
+        /** System.nanoTime() by which my client must have sent the
+         *  request body or accepted the response, or 0 if none. */
+        private long _deadline;
+    }
+
+    /** Convert REQUEST, a request of CONNECTION, with output of at most
+     *  CAPACITY bytes, and hand the response back to CONNECTION's
+     *  loop. */
+    private void convert(Connection connection, ByteBuffer request,
+                         int capacity) {
+        Worker worker = _worker.get();
+        worker._converted.reset(capacity);
+        try {
+            Main config = config(request);
+            Machine M = worker._machines.computeIfAbsent(config,
+                                                         Main::newMachine);
+            config.convert(M, request, worker._output);
+            reply(connection, OK, worker._converted.take());
+        } catch (RuntimeException excp) {
+            worker._converted.take();
+            worker._output = newOutput(worker._converted);
+            reply(connection, ERROR, utf8(errorMessage(excp)));
+        }
+    }
+
+    /** Have the loop of CONNECTION send it a response with status STATUS
+     *  and contents the remaining bytes of BODY. */
+    private static void reply(Connection connection, int status,
+                              ByteBuffer body) {
+        connection._loop.execute(() -> connection.converted(status, body));
+    }
+
+    /** The machines and output buffers of one worker thread. */
+    private static class Worker {
+
+        /** The destination of my output. */
+        private final ResponseChannel _converted = new ResponseChannel();
+
+        /** A writer to _converted. */
+        private MessageWriter _output = newOutput(_converted);
+
+        /** My machine for each configuration, set up anew by each
+         *  request. */
+        private final HashMap<Main, Machine> _machines = new HashMap<>();
+    }
+
+    /** Return a writer of UTF-8 messages to CONVERTED. */
+    private static MessageWriter newOutput(WritableByteChannel converted) {
+        return new MessageWriter(converted, StandardCharsets.UTF_8,
+                                 OUTPUT_BUFFER_SIZE);
+    }
+
+    /** Remove the first line from REQUEST and return the configuration it
+     *  names. */
+    private Main config(ByteBuffer request) {
+        int start = request.position(), end;
+        for (end = start; end < request.limit(); end += 1) {
+            byte b = request.get(end);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+        }
+        int next = end + 1;
+        if (end + 1 < request.limit() && request.get(end) == '\r'
+            && request.get(end + 1) == '\n') {
+            next += 1;
+        }
+        request.position(Math.min(next, request.limit()));
+        if (end == start) {
+            return _default;
+        }
+        String name = new String(request.array(), start, end - start,
+                                 StandardCharsets.UTF_8);
+        Main result = _configs.get(name);
+        if (result == null) {
+            throw error("unknown configuration %s", name);
+        }
+        return result;
+    }
+
+    /** Return the message to send a client whose request failed with
+     *  EXCP. */
+    private static String errorMessage(RuntimeException excp) {
+        if (excp instanceof EnigmaException) {
+            return excp.getMessage();
+        }
+        return String.format("invalid input: %s", excp);
+    }
+
+    /** Return a buffer holding TEXT in UTF-8. */
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Close CHANNEL, ignoring any error. */
+    private static void closeQuietly(Closeable channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** The destination of the output of one request at a time: a buffer
+     *  of a fixed capacity for each, handed on with its contents. */
+    private static class ResponseChannel implements WritableByteChannel {
+
+        /** Prepare to receive up to CAPACITY bytes of output. */
+        void reset(int capacity) {
+            _buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /** Return the output received since the last reset, and receive
+         *  no more until the next. */
+        ByteBuffer take() {
+            ByteBuffer result = _buffer.flip();
+            _buffer = EMPTY;
+            return result;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            if (n > _buffer.remaining()) {
+                throw new IOException(
+                    String.format("response longer than %d bytes",
+                                  _buffer.limit()));
+            }
+            _buffer.put(src);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** An empty buffer. */
+        private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+        /** The buffer receiving output. */
+        private ByteBuffer _buffer = EMPTY;
+    }
+
+    /** Response statuses. */
+    static final int OK = 0, ERROR = 1;
+
+    /** States of a Connection: reading a request header, waiting for
+     *  space for the body, reading the body, waiting for space for the
+     *  output, converting, sending the response, and closed. */
+    private static final int HEADER = 0, REQUEST_SPACE = 1, BODY = 2,
+        RESPONSE_SPACE = 3, CONVERTING = 4, RESPONDING = 5, CLOSED = 6;
+
+    /** Maximum size of a request in bytes. */
+    static final int MAX_REQUEST_SIZE = 1 << 25;
+
+    /** Ratio of the space reserved for the output of a request to its
+     *  size.  Each character of a request may be encoded in one byte and
+     *  its conversion in three, a space is added after each five
+     *  characters, and a line separator may be two bytes where the
+     *  request used one, so no output exceeds four times the size of
+     *  its request. */
+    static final int RESPONSE_FACTOR = 4;
+
+    /** Bytes reserved for requests in progress and their output. */
+    static final int MAX_BYTES_IN_FLIGHT = 1 << 28;
+
+    /** Bytes reserved for the bodies of requests in progress. */
+    static final int MAX_REQUEST_BYTES =
+        MAX_BYTES_IN_FLIGHT / (1 + RESPONSE_FACTOR);
+
+    /** Default number of milliseconds a client may take to send a
+     *  request body or accept a response. */
+    static final long TIMEOUT = 30000;
+
+    /** Maximum number of event loops. */
+    private static final int MAX_EVENT_LOOPS = 4;
+
+    /** Fewest milliseconds between checks for expired connections. */
+    private static final long MIN_SWEEP = 10;
+
+    /** Size of the buffer into which each worker's output is encoded. */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 13;
+
+    /** Maximum number of connections awaiting acceptance. */
+    private static final int BACKLOG = 1024;
+
+    /** The configurations I serve, indexed by name. */
+    private final Map<String, Main> _configs;
+
+    /** The configuration used by requests that do not name one. */
+    private final Main _default;
+
+    /** Nanoseconds a client may take to send a request body or accept a
+     *  response. */
+    private final long _timeout;
+
+    /** The loops serving connections. */
+    private final EventLoop[] _loops;
+
+    /** Converts requests. */
+    private final ExecutorService _workers;
+
+    /** The state of each worker. */
+    private final ThreadLocal<Worker> _worker =
+        ThreadLocal.withInitial(Worker::new);
+
+    /** Permits for the bytes that request bodies may occupy. */
+    private final Semaphore _requestBytes;
+
+    /** Permits for the bytes that the output of requests may occupy. */
+    private final Semaphore _responseBytes;
+
+}
@@ -0,0 +1,455 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Naman Patel
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line of the first configuration served. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message, and its conversion under SETTINGS. */
+    private static final String MESSAGE = "FROM HIS SHOULDER HIAWATHA",
+        CONVERTED = "QVPQS OKOIL PUBKJ ZPISF XDW" + System.lineSeparator();
+
+    /** Rotors of the first and second configurations served. */
+    private static final String[]
+        FIRST = { "B", "Beta", "I", "II", "III", "IV", "V" },
+        SECOND = { "C", "Gamma", "VI", "VII", "VIII" };
+
+    /** Configuration files of the machines with FIRST and SECOND. */
+    private Path _first, _second;
+
+    /** The thread running the server under test. */
+    private Thread _serving;
+
+    /** Write the configuration files served. */
+    private void writeConfigs() throws IOException {
+        _first = tempFile(".conf", navalConfig(5, 3, FIRST));
+        _second = tempFile(".conf", navalConfig(5, 3, SECOND));
+    }
+
+    /** Remove the configuration files served. */
+    private void removeConfigs() throws IOException {
+        Files.deleteIfExists(_first);
+        Files.deleteIfExists(_second);
+    }
+
+    /** Start serving the configurations in _first and _second on
+     *  SERVER, on a new thread. */
+    private void start(ServerSocketChannel server) {
+        start(server, Server.TIMEOUT);
+    }
+
+    /** Start serving the configurations in _first and _second on
+     *  SERVER, on a new thread, dropping clients that take more than
+     *  TIMEOUT milliseconds to send a request or accept a response. */
+    private void start(ServerSocketChannel server, long timeout) {
+        Server served =
+            new Main(new String[] { "--serve=0", _first.toString(),
+                                    _second.toString() })
+            .newServer(timeout);
+        _serving = new Thread(() -> {
+            try {
+                served.serve(server);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        _serving.start();
+    }
+
+    /** Close SERVER and wait for the server on it to stop. */
+    private void stop(ServerSocketChannel server) throws IOException {
+        server.close();
+        try {
+            _serving.join();
+        } catch (InterruptedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /** Send CLIENT a request framed with length LENGTH and holding
+     *  BODY. */
+    private void send(SocketChannel client, int length, byte[] body)
+        throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(Integer.BYTES + body.length);
+        request.putInt(length).put(body).flip();
+        while (request.hasRemaining()) {
+            client.write(request);
+        }
+    }
+
+    /** Read from CLIENT until BUFFER is full.  Returns false if CLIENT
+     *  is closed first. */
+    private boolean readFully(SocketChannel client, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Send the request REQUEST on CLIENT, check that it is answered with
+     *  status STATUS, and return the body of the response. */
+    private String exchange(SocketChannel client, String request, int status)
+        throws IOException {
+        byte[] body = request.getBytes(StandardCharsets.UTF_8);
+        send(client, body.length, body);
+        return response(client, status);
+    }
+
+    /** Check that the next response on CLIENT has status STATUS, and
+     *  return its body. */
+    private String response(SocketChannel client, int status)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        assertTrue("response header", readFully(client, header));
+        assertEquals("response status", status, header.getInt(0));
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(Integer.BYTES));
+        assertTrue("response body", readFully(client, body));
+        return new String(body.array(), StandardCharsets.UTF_8);
+    }
+
+    /** Check that CLIENT has been closed by the server. */
+    private void checkClosed(SocketChannel client) throws IOException {
+        assertEquals("end of connection", -1,
+                     client.read(ByteBuffer.allocate(1)));
+    }
+
+    /** Return the conversion of TEXT by the machine with rotors SECOND set
+     *  up by "* C Gamma VI VII VIII AAAA", as written to an output
+     *  file. */
+    private String convertSecond(String text) {
+        Machine M = navalMachine(5, 3, SECOND);
+        M.insertRotors(new String[] { "C", "Gamma", "VI", "VII", "VIII" });
+        M.setRotors("AAAA");
+        M.setPlugboard(new Permutation("", UPPER));
+        String converted = M.convert(text);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < converted.length(); i += 5) {
+            result.append(i == 0 ? "" : " ");
+            result.append(converted, i, Math.min(i + 5, converted.length()));
+        }
+        return result + System.lineSeparator();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                assertEquals(CONVERTED,
+                             exchange(client, "\n" + SETTINGS + "\n"
+                                      + MESSAGE + "\n", Server.OK));
+                assertEquals(CONVERTED,
+                             exchange(client, _first + "\r\n" + SETTINGS
+                                      + "\r\n" + MESSAGE, Server.OK));
+                assertEquals("invalid input file, no message line",
+                             exchange(client, "\n" + SETTINGS,
+                                      Server.ERROR));
+                assertEquals("invalid input file, no rotor settings",
+                             exchange(client, "", Server.ERROR));
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkConfigSelection() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                String second = "* C Gamma VI VII VIII AAAA\nHELLO WORLD\n";
+                assertEquals(convertSecond("HELLOWORLD"),
+                             exchange(client, _second + "\n" + second,
+                                      Server.OK));
+                exchange(client, _first + "\n" + second, Server.ERROR);
+                exchange(client, "\n" + second, Server.ERROR);
+                assertEquals("unknown configuration nosuch",
+                             exchange(client, "nosuch\n" + second,
+                                      Server.ERROR));
+                assertEquals(CONVERTED,
+                             exchange(client, _first + "\n" + SETTINGS
+                                      + "\n" + MESSAGE, Server.OK));
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkErrorReplies() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                String[] bad = {
+                    "\n" + MESSAGE + "\n",
+                    "\n* B Beta III IV I AXL\n" + MESSAGE,
+                    "\n* B Beta III IV NOSUCH AXLE\n" + MESSAGE,
+                    "\n" + SETTINGS + "\nFROM HIS SHOULDER 1\n",
+                };
+                for (String request : bad) {
+                    assertFalse(exchange(client, request, Server.ERROR)
+                                .isEmpty());
+                    assertEquals(CONVERTED,
+                                 exchange(client, "\n" + SETTINGS + "\n"
+                                          + MESSAGE, Server.OK));
+                }
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkBadFrames() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            for (int length : new int[] { Server.MAX_REQUEST_SIZE + 1,
+                                          -1, Integer.MIN_VALUE }) {
+                try (SocketChannel client =
+                         SocketChannel.open(server.getLocalAddress())) {
+                    send(client, length, new byte[0]);
+                    assertEquals(String.format("request of %d bytes is too "
+                                               + "long", length),
+                                 response(client, Server.ERROR));
+                    checkClosed(client);
+                }
+            }
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                send(client, 100,
+                     "\n* B Beta".getBytes(StandardCharsets.UTF_8));
+                client.shutdownOutput();
+                checkClosed(client);
+            }
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                client.write(ByteBuffer.wrap(new byte[] { 0, 0 }));
+                client.shutdownOutput();
+                checkClosed(client);
+            }
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                assertEquals(CONVERTED,
+                             exchange(client, "\n" + SETTINGS + "\n"
+                                      + MESSAGE, Server.OK));
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkResponseSpace() throws IOException {
+        assertTrue("largest request cannot be reserved",
+                   Server.MAX_REQUEST_SIZE <= Server.MAX_REQUEST_BYTES);
+        assertTrue("largest response cannot be reserved",
+                   (long) Server.RESPONSE_FACTOR * Server.MAX_REQUEST_SIZE
+                   <= Server.MAX_BYTES_IN_FLIGHT - Server.MAX_REQUEST_BYTES);
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            try (SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                StringBuilder lines = new StringBuilder();
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 1 << 18; i += 1) {
+                    char ch = (char) ('A' + i % 26);
+                    lines.append(ch).append('\n');
+                    text.append(ch);
+                }
+                Machine M = navalMachine(5, 3, FIRST);
+                M.insertRotors(new String[] { "B", "Beta", "III", "IV",
+                                              "I" });
+                M.setRotors("AXLE");
+                M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                               UPPER));
+                String converted = M.convert(text.toString());
+                StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < converted.length(); i += 1) {
+                    expected.append(converted.charAt(i))
+                        .append(System.lineSeparator());
+                }
+                assertEquals(expected.toString(),
+                             exchange(client, "\n" + SETTINGS + "\n"
+                                      + lines, Server.OK));
+                assertEquals(CONVERTED,
+                             exchange(client, "\n" + SETTINGS + "\n"
+                                      + MESSAGE, Server.OK));
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkUnixSocket() throws IOException {
+        writeConfigs();
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try {
+            Server.open(socket.toString()).close();
+            assertTrue(Files.exists(socket));
+            ServerSocketChannel server = Server.open(socket.toString());
+            try {
+                start(server);
+                try (SocketChannel client =
+                         SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                    client.connect(server.getLocalAddress());
+                    assertEquals(CONVERTED,
+                                 exchange(client, "\n" + SETTINGS + "\n"
+                                          + MESSAGE, Server.OK));
+                }
+            } finally {
+                stop(server);
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkConcurrentClients() throws Exception {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server);
+            ArrayList<Thread> clients = new ArrayList<>();
+            ArrayList<Throwable> failures = new ArrayList<>();
+            for (int k = 0; k < 8; k += 1) {
+                Thread client = new Thread(() -> {
+                    try (SocketChannel channel =
+                             SocketChannel.open(server.getLocalAddress())) {
+                        for (int i = 0; i < 20; i += 1) {
+                            assertEquals(CONVERTED,
+                                         exchange(channel, "\n" + SETTINGS
+                                                  + "\n" + MESSAGE,
+                                                  Server.OK));
+                        }
+                    } catch (Throwable excp) {
+                        synchronized (failures) {
+                            failures.add(excp);
+                        }
+                    }
+                });
+                client.start();
+                clients.add(client);
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            assertEquals("failed clients: " + failures, 0, failures.size());
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkStalledClient() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        try {
+            start(server, 500);
+            try (SocketChannel stalled =
+                     SocketChannel.open(server.getLocalAddress());
+                 SocketChannel client =
+                     SocketChannel.open(server.getLocalAddress())) {
+                send(stalled, Server.MAX_REQUEST_SIZE,
+                     "\n* B Beta".getBytes(StandardCharsets.UTF_8));
+                StringBuilder request = new StringBuilder("\n" + SETTINGS
+                                                          + "\n" + MESSAGE);
+                int length =
+                    Server.MAX_REQUEST_BYTES - Server.MAX_REQUEST_SIZE + 1;
+                while (request.length() < length) {
+                    request.append(' ');
+                }
+                assertEquals("request cannot wait for space", CONVERTED,
+                             exchange(client, request.toString(),
+                                      Server.OK));
+                checkClosed(stalled);
+                assertEquals(CONVERTED,
+                             exchange(client, "\n" + SETTINGS + "\n"
+                                      + MESSAGE, Server.OK));
+            }
+        } finally {
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+    @Test
+    public void checkManyConnections() throws IOException {
+        writeConfigs();
+        ServerSocketChannel server = Server.open("0");
+        ArrayList<SocketChannel> clients = new ArrayList<>();
+        try {
+            start(server);
+            for (int k = 0; k < 2000; k += 1) {
+                clients.add(SocketChannel.open(server.getLocalAddress()));
+            }
+            for (int k = clients.size() - 1; k >= 0; k -= 1) {
+                assertEquals(msg("response", "connection %d", k), CONVERTED,
+                             exchange(clients.get(k), "\n" + SETTINGS
+                                      + "\n" + MESSAGE, Server.OK));
+            }
+        } finally {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            stop(server);
+            removeConfigs();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A bounded cache of machine setups, keyed by settings line, so that a
+ *  settings line seen before can be applied to a machine without
+ *  parsing it again.  A setup records the rotors, their settings and
+ *  the plugboard of a machine just after a settings line was applied,
+ *  and optionally a keystream of the conversions at its first few
+ *  keystrokes (see Machine.keystream).  Settings lines are normalized
+ *  by collapsing each run of blanks to one, so lines that differ only
+ *  in spacing share a setup.
+ *
+ *  The cache holds at most a given number of setups occupying at most
+ *  a given (estimated) number of bytes, evicting the least recently
+ *  used setups to stay within both.  It may be shared by any number of
+ *  threads.
+ *  @author Naman Patel
+ */
+final class SettingsCache {
+
+    /** A cache of at most MAXENTRIES setups occupying at most MAXBYTES,
+     *  each with a keystream of KEYSTREAMLENGTH keystrokes, or none if
+     *  KEYSTREAMLENGTH is 0. */
+    SettingsCache(int maxEntries, long maxBytes, int keystreamLength) {
+        _maxEntries = maxEntries;
+        _maxBytes = maxBytes;
+        _keystreamLength = keystreamLength;
+    }
+
+    /** If I hold a setup for SETTINGS, apply it to M, which must have
+     *  the configuration of the machines from which I recorded setups,
+     *  and return true.  Otherwise, return false. */
+    boolean apply(Machine M, String settings) {
+        Setup setup;
+        synchronized (this) {
+            setup = _setups.get(normalize(settings));
+            if (setup == null) {
+                _misses += 1;
+            } else {
+                _hits += 1;
+            }
+        }
+        if (Metrics.ENABLED) {
+            (setup == null ? Metrics.SETTINGS_MISSES : Metrics.SETTINGS_HITS)
+                .increment();
+        }
+        if (setup == null) {
+            return false;
+        }
+        M.insertRotors(setup.rotors);
+        M.setRotors(setup.settings);
+        M.setPlugboard(setup.plugboard);
+        if (setup.keystream != null) {
+            M.setKeystream(setup.keystream);
+        }
+        return true;
+    }
+
+    /** Record the current setup of M, which has just been set according
+     *  to SETTINGS, evicting older setups as needed.  M's state is
+     *  unchanged. */
+    void put(String settings, Machine M) {
+        String key = normalize(settings);
+        Setup setup = new Setup();
+        int numRotors = M.numRotors(), size = M.alphabet().size();
+        setup.rotors = new String[numRotors];
+        setup.settings = new int[numRotors - 1];
+        for (int i = 0; i < numRotors; i += 1) {
+            setup.rotors[i] = M.rotor(i).name();
+            if (i > 0) {
+                setup.settings[i - 1] = M.rotor(i).setting();
+            }
+        }
+        setup.plugboard = M.plugboard();
+        if (_keystreamLength > 0) {
+            setup.keystream = M.keystream(_keystreamLength);
+        }
+        setup.bytes = ENTRY_BYTES + 2L * key.length()
+            + numRotors * (REFERENCE_BYTES + Integer.BYTES)
+            + 2L * size * Integer.BYTES
+            + (setup.keystream == null ? 0
+               : (long) setup.keystream.length * Integer.BYTES);
+        synchronized (this) {
+            Setup old = _setups.put(key, setup);
+            if (old != null) {
+                _bytes -= old.bytes;
+            }
+            _bytes += setup.bytes;
+            Iterator<Setup> eldest = _setups.values().iterator();
+            while (!_setups.isEmpty()
+                   && (_setups.size() > _maxEntries || _bytes > _maxBytes)) {
+                _bytes -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** Return the number of setups I hold. */
+    synchronized int size() {
+        return _setups.size();
+    }
+
+    /** Return the estimated number of bytes occupied by my setups. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of calls to apply that found a setup. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to apply that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return SETTINGS with leading and trailing blanks removed and each
+     *  other run of blanks replaced by a single space. */
+    static String normalize(String settings) {
+        StringBuilder result = new StringBuilder(settings.length());
+        boolean blank = false;
+        for (int i = 0; i < settings.length(); i += 1) {
+            char ch = settings.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                blank = result.length() > 0;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** The state of a machine just after a settings line was applied. */
+    private static final class Setup {
+        /** The names of the rotors in each slot, reflector first. */
+        private String[] rotors;
+        /** The settings of the rotors in slots 1 and up. */
+        private int[] settings;
+        /** The plugboard. */
+        private Permutation plugboard;
+        /** The conversions at the first keystrokes, or null. */
+        private int[] keystream;
+        /** The estimated number of bytes I occupy. */
+        private long bytes;
+    }
+
+    /** Estimated bytes occupied by a setup apart from its key, rotors,
+     *  plugboard and keystream, including its map entry. */
+    private static final long ENTRY_BYTES = 160;
+
+    /** Estimated bytes occupied by a reference. */
+    private static final long REFERENCE_BYTES = 8;
+
+    /** Maximum number of setups. */
+    private final int _maxEntries;
+
+    /** Maximum estimated bytes occupied by setups. */
+    private final long _maxBytes;
+
+    /** Number of keystrokes in each keystream. */
+    private final int _keystreamLength;
+
+    /** The setups, by normalized settings line, least recently used
+     *  first. */
+    private final LinkedHashMap<String, Setup> _setups =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated bytes occupied by _setups. */
+    private long _bytes;
+
+    /** Number of calls to apply that found, or did not find, a
+     *  setup. */
+    private long _hits, _misses;
+}
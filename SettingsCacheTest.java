@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Naman Patel
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a naval machine with five slots and three pawls, with no
+     *  rotors inserted. */
+    private Machine machine() {
+        return navalMachine(5, 3, "B", "Beta", "I", "II", "III", "IV", "V");
+    }
+
+    /** Set M up with rotors ROTORS at SETTING and plugboard PLUGBOARD, as
+     *  by the settings line returned. */
+    private String setUp(Machine M, String[] rotors, String setting,
+                         String plugboard) {
+        M.insertRotors(rotors);
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation(plugboard, UPPER));
+        return String.format("* %s %s %s", String.join(" ", rotors),
+                             setting, plugboard);
+    }
+
+    /** Return the current settings of M's rotors as letters. */
+    private String settings(Machine M) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < M.numRotors(); i += 1) {
+            result.append(UPPER.toChar(M.rotor(i).setting()));
+        }
+        return result.toString();
+    }
+
+    /** Rotors of the machines tested. */
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkNormalize() {
+        assertEquals("* B Beta I AAAA (AB) (CD)",
+                     SettingsCache.normalize("  *  B\tBeta I   AAAA (AB) "
+                                             + "(CD)  "));
+        assertEquals("", SettingsCache.normalize("   "));
+    }
+
+    @Test
+    public void checkHitsAndMisses() {
+        SettingsCache cache = new SettingsCache(10, 1 << 20, 0);
+        Machine M = machine(), other = machine();
+        String line = setUp(M, ROTORS, "AXLE", "(HQ) (EX) (IP) (TR) (BY)");
+        assertFalse(cache.apply(other, line));
+        cache.put(line, M);
+        assertEquals(1, cache.size());
+        assertTrue(cache.apply(other, line.replace(" ", "  ")));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals("AXLE", settings(other));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     other.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void checkLeastRecentlyUsedEvicted() {
+        SettingsCache cache = new SettingsCache(2, 1 << 20, 0);
+        Machine M = machine();
+        String first = setUp(M, ROTORS, "AAAA", "");
+        cache.put(first, M);
+        String second = setUp(M, ROTORS, "BBBB", "");
+        cache.put(second, M);
+        assertTrue(cache.apply(M, first));
+        String third = setUp(M, ROTORS, "CCCC", "");
+        cache.put(third, M);
+        assertEquals(2, cache.size());
+        assertTrue(cache.apply(M, first));
+        assertFalse(cache.apply(M, second));
+        assertTrue(cache.apply(M, third));
+    }
+
+    @Test
+    public void checkBytesBounded() {
+        SettingsCache unbounded = new SettingsCache(100, 1 << 20, 0);
+        Machine M = machine();
+        String line = setUp(M, ROTORS, "AAAA", "");
+        unbounded.put(line, M);
+        long bytes = unbounded.bytes();
+        assertTrue(bytes > 0);
+        SettingsCache cache = new SettingsCache(100, 3 * bytes, 0);
+        for (String setting : new String[] { "AAAA", "BBBB", "CCCC",
+                                             "DDDD", "EEEE" }) {
+            cache.put(setUp(M, ROTORS, setting, ""), M);
+            assertTrue(cache.bytes() <= 3 * bytes);
+        }
+        assertEquals(3, cache.size());
+        assertFalse(cache.apply(M, setUp(M, ROTORS, "BBBB", "")));
+        assertTrue(cache.apply(M, setUp(M, ROTORS, "EEEE", "")));
+    }
+
+    @Test
+    public void checkKeystream() {
+        String plugboard = "(HQ) (EX) (IP) (TR) (BY)";
+        String text = "FROMHISSHOULDERHIAWATHA";
+        SettingsCache cache = new SettingsCache(10, 1 << 20, 8);
+        Machine M = machine();
+        String line = setUp(M, ROTORS, "AXLE", plugboard);
+        cache.put(line, M);
+        assertEquals("AXLE", settings(M));
+        for (int len = 0; len <= text.length(); len += 1) {
+            Machine plain = machine();
+            setUp(plain, ROTORS, "AXLE", plugboard);
+            assertTrue(cache.apply(M, line));
+            assertEquals(msg("keystream", "%d characters", len),
+                         plain.convert(text.substring(0, len)),
+                         M.convert(text.substring(0, len)));
+            assertEquals(msg("keystream", "%d characters", len),
+                         settings(plain), settings(M));
+        }
+        assertTrue(cache.apply(M, line));
+        M.convert("FROM");
+        M.advance(4);
+        Machine plain = machine();
+        setUp(plain, ROTORS, "AXLE", plugboard);
+        plain.advance(8);
+        assertEquals(plain.convert(text), M.convert(text));
+    }
+
+}
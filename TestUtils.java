@@ -1,5 +1,16 @@
 package enigma;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +50,68 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls whose
+     *  available rotors are the naval rotors named ROTORS, as given in
+     *  NAVALA, with no rotors inserted.  Rotors B and C are reflectors,
+     *  Beta and Gamma are fixed, and the others move, with the notches
+     *  in NAVAL_NOTCHES. */
+    static Machine navalMachine(int numRotors, int pawls, String... rotors) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String name : rotors) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                all.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                all.add(new MovingRotor(name, perm, NAVAL_NOTCHES.get(name)));
+            } else {
+                all.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, numRotors, pawls, all);
+    }
+
+    /** Return the contents of a configuration file describing the
+     *  machine returned by navalMachine(NUMROTORS, PAWLS, ROTORS). */
+    static String navalConfig(int numRotors, int pawls, String... rotors) {
+        StringBuilder result = new StringBuilder();
+        result.append(UPPER_STRING).append('\n');
+        result.append(numRotors).append(' ').append(pawls).append('\n');
+        for (String name : rotors) {
+            String type;
+            if (name.equals("B") || name.equals("C")) {
+                type = "R";
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                type = "M" + NAVAL_NOTCHES.get(name);
+            } else {
+                type = "N";
+            }
+            result.append(name).append(' ').append(type).append(' ')
+                .append(NAVALA.get(name)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a new temporary file whose name ends in SUFFIX and which
+     *  contains CONTENTS, encoded in UTF-8. */
+    static Path tempFile(String suffix, String contents) throws IOException {
+        Path result = Files.createTempFile("enigma", suffix);
+        Files.write(result, contents.getBytes(StandardCharsets.UTF_8));
+        return result;
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -126,4 +199,99 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** A charset whose coders produce nothing until they are flushed.
+     *  Its encoder writes each ASCII character as one byte; its decoder
+     *  reads each byte as that character twice, so that its output may
+     *  not fit where its input did.  Its coders refuse further input
+     *  once flushing has begun.  Exercises the handling of overflow by
+     *  CharsetEncoder.flush and CharsetDecoder.flush. */
+    static final Charset DEFERRED = new Charset("X-ENIGMA-DEFERRED",
+                                                null) {
+        @Override
+        public boolean contains(Charset cs) {
+            return cs == this;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 2, 2) {
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in,
+                                                 CharBuffer out) {
+                    if (_flushing) {
+                        throw new IllegalStateException("coding after flush");
+                    }
+                    while (in.hasRemaining()) {
+                        byte b = in.get();
+                        _pending.append((char) b).append((char) b);
+                    }
+                    return CoderResult.UNDERFLOW;
+                }
+
+                @Override
+                protected CoderResult implFlush(CharBuffer out) {
+                    _flushing = true;
+                    int n = Math.min(out.remaining(), _pending.length());
+                    out.put(_pending.substring(0, n));
+                    _pending.delete(0, n);
+                    return _pending.length() == 0 ? CoderResult.UNDERFLOW
+                        : CoderResult.OVERFLOW;
+                }
+
+                @Override
+                protected void implReset() {
+                    _pending.setLength(0);
+                    _flushing = false;
+                }
+
+                /** Characters decoded but not yet delivered. */
+                private final StringBuilder _pending = new StringBuilder();
+                /** True iff implFlush has been called since the last
+                 *  reset. */
+                private boolean _flushing;
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            return new CharsetEncoder(this, 1, 1) {
+                @Override
+                protected CoderResult encodeLoop(CharBuffer in,
+                                                 ByteBuffer out) {
+                    if (_flushing) {
+                        throw new IllegalStateException("coding after flush");
+                    }
+                    while (in.hasRemaining()) {
+                        _pending.append(in.get());
+                    }
+                    return CoderResult.UNDERFLOW;
+                }
+
+                @Override
+                protected CoderResult implFlush(ByteBuffer out) {
+                    _flushing = true;
+                    int n = Math.min(out.remaining(), _pending.length());
+                    for (int i = 0; i < n; i += 1) {
+                        out.put((byte) _pending.charAt(i));
+                    }
+                    _pending.delete(0, n);
+                    return _pending.length() == 0 ? CoderResult.UNDERFLOW
+                        : CoderResult.OVERFLOW;
+                }
+
+                @Override
+                protected void implReset() {
+                    _pending.setLength(0);
+                    _flushing = false;
+                }
+
+                /** Characters encoded but not yet delivered. */
+                private final StringBuilder _pending = new StringBuilder();
+                /** True iff implFlush has been called since the last
+                 *  reset. */
+                private boolean _flushing;
+            };
+        }
+    };
+
 }
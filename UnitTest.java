@@ -10,7 +10,14 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(AlphabetTest.class, PermutationTest.class,
+                          MovingRotorTest.class, MachineTest.class,
+                          KeySearchTest.class, LaneMachineTest.class,
+                          SettingsCacheTest.class, OffHeapTableTest.class,
+                          CheckpointTest.class, ServerTest.class,
+                          LineReaderTest.class, MessageWriterTest.class,
+                          MainTest.class, ConfigCacheTest.class,
+                          MetricsTest.class);
     }
 
 }
@@ -0,0 +1,85 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A LaneMachine that steps all its lanes at once with the Vector API,
+ *  one lane per element of the platform's preferred vector of ints.
+ *  Each table lookup becomes one gather over all lanes, and rotor
+ *  stepping becomes masked adds.  Requires the incubating module
+ *  jdk.incubator.vector, and so is only created reflectively by
+ *  LaneMachine.create once that module is known to be present.
+ *  @author Naman Patel
+ */
+final class VectorLaneMachine extends LaneMachine {
+
+    /** A VectorLaneMachine for the configuration of TEMPLATE (see
+     *  LaneMachine). */
+    VectorLaneMachine(Machine template) {
+        super(template, SPECIES.length());
+        _index = new int[SPECIES.length()];
+    }
+
+    @Override
+    void convertLanes(int[] in, int[] out) {
+        int n = _size, last = _numRotors - 1, lanes = _lanes;
+        VectorMask<Integer> atNotch = SPECIES.maskAll(false),
+            leftRotates = atNotch;
+        for (int i = 0, slot = 0; i <= last; i += 1, slot += lanes) {
+            VectorMask<Integer> rotates =
+                VectorMask.fromArray(SPECIES, _rotates, slot);
+            VectorMask<Integer> advance = rotates;
+            if (i < last) {
+                IntVector right =
+                    IntVector.fromArray(SPECIES, _notchBases, slot + lanes)
+                    .add(IntVector.fromArray(SPECIES, _settings,
+                                             slot + lanes));
+                VectorMask<Integer> rightAtNotch =
+                    gather(_notches, right).compare(VectorOperators.NE, 0);
+                advance = rotates.and(rightAtNotch
+                                      .or(atNotch.and(leftRotates)));
+                atNotch = rightAtNotch;
+            }
+            IntVector s = IntVector.fromArray(SPECIES, _settings, slot)
+                .lanewise(VectorOperators.ADD, 1, advance);
+            s.blend(0, s.compare(VectorOperators.EQ, n))
+                .intoArray(_settings, slot);
+            leftRotates = rotates;
+        }
+        IntVector plugboards =
+            IntVector.fromArray(SPECIES, _plugboardBases, 0);
+        IntVector c = gather(_plugboards,
+                             plugboards.add(IntVector.fromArray(SPECIES, in,
+                                                                0)));
+        for (int slot = last * lanes; slot >= 0; slot -= lanes) {
+            c = gather(_tables, row(_forwardBases, slot).add(c));
+        }
+        for (int slot = lanes; slot <= last * lanes; slot += lanes) {
+            c = gather(_tables, row(_backwardBases, slot).add(c));
+        }
+        gather(_plugboards, plugboards.add(c)).intoArray(out, 0);
+    }
+
+    /** Return the offsets in _tables of the rows for the current
+     *  settings of the rotors in slot SLOT / _lanes of each lane, whose
+     *  tables start at BASES[SLOT ..]. */
+    private IntVector row(int[] bases, int slot) {
+        return IntVector.fromArray(SPECIES, _settings, slot).mul(_size)
+            .add(IntVector.fromArray(SPECIES, bases, slot));
+    }
+
+    /** Return the elements of TABLE at the indices in INDEX. */
+    private IntVector gather(int[] table, IntVector index) {
+        index.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** The vector shape used, one element per lane. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Indices of the elements being gathered. */
+    private final int[] _index;
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Generated configurations and messages for the benchmarks.  Every
+ *  configuration has a reflector B, a fixed rotor BETA and moving rotors
+ *  I through V, each with a random permutation of its alphabet, and is
+ *  used in a machine with 5 slots and 3 pawls.
+ *  @author Naman Patel
+ */
+class BenchmarkData {
+
+    /** Return a string of WIDTH distinct characters usable as an
+     *  alphabet.  These are printable ASCII characters if WIDTH is at
+     *  most ASCII_SYMBOLS.length(), and otherwise consecutive characters
+     *  starting at U+0100, which must be written in a Unicode charset. */
+    static String alphabet(int width) {
+        if (width <= ASCII_SYMBOLS.length()) {
+            return ASCII_SYMBOLS.substring(0, width);
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < width; i += 1) {
+            result.append((char) (WIDE_BASE + i));
+        }
+        return result.toString();
+    }
+
+    /** Return the cycles of a random permutation of the characters in
+     *  ALPHABET, chosen using RANDOM.  If REFLECTING, the cycles are all
+     *  pairs, and ALPHABET must have an even number of characters. */
+    static String cycles(String alphabet, boolean reflecting, Random random) {
+        List<Character> chars = new ArrayList<>();
+        for (int i = 0; i < alphabet.length(); i += 1) {
+            chars.add(alphabet.charAt(i));
+        }
+        Collections.shuffle(chars, random);
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < chars.size()) {
+            int len = reflecting ? 2
+                : 1 + random.nextInt(Math.min(chars.size() - i,
+                                              MAX_CYCLE_LENGTH));
+            result.append(result.length() == 0 ? "(" : " (");
+            for (int k = i; k < i + len; k += 1) {
+                result.append(chars.get(k));
+            }
+            result.append(')');
+            i += len;
+        }
+        return result.toString();
+    }
+
+    /** Return the text of a configuration file for ALPHABET, with
+     *  permutations chosen using RANDOM. */
+    static String config(String alphabet, Random random) {
+        StringBuilder result = new StringBuilder();
+        result.append(alphabet).append('\n');
+        result.append(NUM_ROTORS).append(' ').append(NUM_PAWLS).append('\n');
+        result.append("B R ").append(cycles(alphabet, true, random))
+            .append('\n');
+        result.append("BETA N ").append(cycles(alphabet, false, random))
+            .append('\n');
+        for (String name : MOVING_ROTORS) {
+            result.append(name).append(" M")
+                .append(alphabet.charAt(random.nextInt(alphabet.length())))
+                .append(' ').append(cycles(alphabet, false, random))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a machine for ALPHABET with permutations chosen using
+     *  RANDOM, set up with a random settings line (see settings). */
+    static Machine machine(String alphabet, Random random) {
+        Alphabet alpha = new Alphabet(alphabet);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(cycles(alphabet, true,
+                                                             random),
+                                                      alpha)));
+        rotors.add(new FixedRotor("BETA",
+                                  new Permutation(cycles(alphabet, false,
+                                                         random),
+                                                  alpha)));
+        for (String name : MOVING_ROTORS) {
+            String notch =
+                String.valueOf(alphabet.charAt(random.nextInt(
+                                                   alphabet.length())));
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(cycles(alphabet,
+                                                              false, random),
+                                                       alpha),
+                                       notch));
+        }
+        Machine result = new Machine(alpha, NUM_ROTORS, NUM_PAWLS, rotors);
+        result.insertRotors(new String[] { "B", "BETA", "I", "II", "III" });
+        result.setRotors(setting(alphabet, random));
+        result.setPlugboard(new Permutation(plugboard(alphabet, random),
+                                            alpha));
+        return result;
+    }
+
+    /** Return a random settings line for a configuration of ALPHABET,
+     *  chosen using RANDOM. */
+    static String settings(String alphabet, Random random) {
+        return String.format("* B BETA I II III %s %s",
+                             setting(alphabet, random),
+                             plugboard(alphabet, random));
+    }
+
+    /** Return a random initial setting of the rotors for ALPHABET, chosen
+     *  using RANDOM. */
+    static String setting(String alphabet, Random random) {
+        return message(alphabet, NUM_ROTORS - 1, random);
+    }
+
+    /** Return random plugboard cycles swapping PLUGGED_PAIRS pairs of
+     *  characters in ALPHABET, chosen using RANDOM. */
+    static String plugboard(String alphabet, Random random) {
+        String pairs = cycles(alphabet, true, random);
+        int end = Math.min(pairs.length(),
+                           PLUGGED_PAIRS * "(xy) ".length() - 1);
+        return pairs.substring(0, end);
+    }
+
+    /** Return a message of LENGTH random characters from ALPHABET, chosen
+     *  using RANDOM. */
+    static String message(String alphabet, int length, Random random) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(result);
+    }
+
+    /** Printable ASCII characters other than those with special meanings
+     *  in configuration and input files. */
+    static final String ASCII_SYMBOLS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+        + "!\"#$%&'+,-./:;<=>?@[\\]^_`{|}~";
+
+    /** First character of alphabets wider than ASCII_SYMBOLS. */
+    private static final char WIDE_BASE = '\u0100';
+
+    /** Names of the moving rotors in each configuration. */
+    private static final String[] MOVING_ROTORS = {
+        "I", "II", "III", "IV", "V"
+    };
+
+    /** Number of rotor slots and pawls of each machine. */
+    static final int NUM_ROTORS = 5, NUM_PAWLS = 3;
+
+    /** Longest cycle in a generated non-reflecting permutation. */
+    private static final int MAX_CYCLE_LENGTH = 16;
+
+    /** Number of pairs of characters swapped by a plugboard. */
+    private static final int PLUGGED_PAIRS = 10;
+
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with the GC profiler, which reports the bytes
+ *  allocated per operation and the collections during each benchmark.
+ *  Can also record the scores as a baseline, or check them against
+ *  one to catch regressions in throughput.
+ *  @author Naman Patel
+ */
+public final class Benchmarks {
+
+    /** Run the benchmarks whose names match any of the regular
+     *  expressions in ARGS, or all of them if there are none.  Any ARGS
+     *  before these that begin with "--" are options:
+     *      --record=FILE  write the score of each benchmark run to the
+     *                     baseline file FILE.
+     *      --check=FILE   exit with code 1 if the score of any benchmark
+     *                     run is below the one recorded in the baseline
+     *                     file FILE by more than the threshold.
+     *      --threshold=T  the fraction of its baseline score by which a
+     *                     score may fall before --check fails
+     *                     (default 0.1).
+     *  Scores must be in units where more is better, as they are for
+     *  throughput. */
+    public static void main(String... args)
+        throws RunnerException, IOException {
+        String record = null, check = null;
+        double threshold = DEFAULT_THRESHOLD;
+        int first;
+        for (first = 0; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.startsWith("--record=")) {
+                record = option.substring(9);
+            } else if (option.startsWith("--check=")) {
+                check = option.substring(8);
+            } else if (option.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(option.substring(12));
+            } else {
+                throw new IllegalArgumentException("unknown option "
+                                                   + option);
+            }
+        }
+        ChainedOptionsBuilder options =
+            new OptionsBuilder().addProfiler(GCProfiler.class);
+        if (first == args.length) {
+            options.include(ALL);
+        }
+        for (int i = first; i < args.length; i += 1) {
+            options.include(args[i]);
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+        TreeMap<String, Double> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            scores.put(key(result.getParams()),
+                       result.getPrimaryResult().getScore());
+        }
+        if (record != null) {
+            record(scores, record);
+        }
+        if (check != null && !check(scores, check, threshold)) {
+            System.exit(1);
+        }
+    }
+
+    /** Return the name by which the benchmark run with PARAMS is
+     *  recorded in a baseline. */
+    private static String key(BenchmarkParams params) {
+        StringBuilder result = new StringBuilder(params.getBenchmark());
+        String separator = ":";
+        for (String name : params.getParamsKeys()) {
+            result.append(separator).append(name).append('=')
+                .append(params.getParam(name));
+            separator = ",";
+        }
+        return result.toString();
+    }
+
+    /** Write SCORES to the baseline file named FILE, a properties file
+     *  whose entries are in order so that baselines can be compared. */
+    private static void record(TreeMap<String, Double> scores, String file)
+        throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write("# Benchmark scores recorded by enigma.Benchmarks "
+                      + "--record\n");
+            for (String key : scores.keySet()) {
+                out.write(String.format("%s = %s%n",
+                                        key.replace(":", "\\:")
+                                        .replace("=", "\\="),
+                                        scores.get(key)));
+            }
+        }
+    }
+
+    /** Compare SCORES with those in the baseline file named FILE,
+     *  reporting any more than THRESHOLD below their baseline.  Returns
+     *  true iff there are none. */
+    private static boolean check(TreeMap<String, Double> scores, String file,
+                                 double threshold) throws IOException {
+        Properties baseline = new Properties();
+        try (Reader in = new FileReader(file)) {
+            baseline.load(in);
+        }
+        ArrayList<String> regressions = new ArrayList<>();
+        for (String key : scores.keySet()) {
+            String recorded = baseline.getProperty(key);
+            if (recorded == null) {
+                System.out.printf("No baseline for %s%n", key);
+                continue;
+            }
+            double expected = Double.parseDouble(recorded),
+                score = scores.get(key);
+            if (score < expected * (1 - threshold)) {
+                regressions.add(String.format(
+                    "%s: %.3f, %.1f%% below baseline %.3f", key, score,
+                    100 * (1 - score / expected), expected));
+            }
+        }
+        if (regressions.isEmpty()) {
+            System.out.printf("All %d scores within %.1f%% of baseline%n",
+                              scores.size(), 100 * threshold);
+            return true;
+        }
+        System.out.printf("Throughput regressions beyond %.1f%%:%n",
+                          100 * threshold);
+        for (String regression : regressions) {
+            System.out.printf("    %s%n", regression);
+        }
+        return false;
+    }
+
+    /** Matches the names of all the benchmarks. */
+    private static final String ALL = "enigma\\..*Benchmark";
+
+    /** Default fraction by which a score may fall below its baseline. */
+    private static final double DEFAULT_THRESHOLD = 0.1;
+
+}
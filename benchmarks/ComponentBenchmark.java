@@ -0,0 +1,161 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the per-character operations of the machine's parts.
+ *  Each invocation applies an operation to INPUTS random characters, so
+ *  scores are in operations per microsecond on a single character.
+ *  @author Naman Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "90", "256" })
+    public int width;
+
+    /** Generate the alphabet, parts and inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchmarkData.alphabet(width);
+        _alphabet = new Alphabet(chars);
+        _permutation =
+            new Permutation(BenchmarkData.cycles(chars, false, random),
+                            _alphabet);
+        _rotor = new MovingRotor("I", _permutation,
+                                 BenchmarkData.message(chars, 1, random));
+        _rotor.set(random.nextInt(width));
+        _machine = BenchmarkData.machine(chars, random);
+        _chars = BenchmarkData.message(chars, INPUTS, random).toCharArray();
+        _ints = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _ints[i] = _alphabet.toInt(_chars[i]);
+        }
+    }
+
+    /** Alphabet.toInt. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int alphabetToInt() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** Permutation.permute on indices. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permutationPermute() {
+        int sum = 0;
+        for (int p : _ints) {
+            sum += _permutation.permute(p);
+        }
+        return sum;
+    }
+
+    /** Permutation.invert on indices. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permutationInvert() {
+        int sum = 0;
+        for (int c : _ints) {
+            sum += _permutation.invert(c);
+        }
+        return sum;
+    }
+
+    /** Rotor.convertForward. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int rotorConvertForward() {
+        int sum = 0;
+        for (int p : _ints) {
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /** Rotor.convertBackward. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int rotorConvertBackward() {
+        int sum = 0;
+        for (int e : _ints) {
+            sum += _rotor.convertBackward(e);
+        }
+        return sum;
+    }
+
+    /** MovingRotor.atNotch, after setting the rotor to each input. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int movingRotorAtNotch() {
+        int count = 0;
+        for (int p : _ints) {
+            _rotor.set(p);
+            if (_rotor.atNotch()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Machine.convert on single character indices, including the
+     *  stepping of the rotors. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int machineConvertInt() {
+        int sum = 0;
+        for (int c : _ints) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Number of characters processed by each invocation. */
+    static final int INPUTS = 1024;
+
+    /** Seed for the generated data. */
+    private static final long SEED = 0x454e49474d41L;
+
+    /** The alphabet. */
+    private Alphabet _alphabet;
+
+    /** A random permutation of _alphabet. */
+    private Permutation _permutation;
+
+    /** A moving rotor with permutation _permutation and one notch. */
+    private MovingRotor _rotor;
+
+    /** A machine with random rotors. */
+    private Machine _machine;
+
+    /** Random characters from _alphabet. */
+    private char[] _chars;
+
+    /** The indices of _chars in _alphabet. */
+    private int[] _ints;
+
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of converting many short, independently keyed messages,
+ *  one Machine at a time and in the lanes of a LaneMachine.  Scores are
+ *  in batches of MESSAGES messages per millisecond.
+ *  @author Naman Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LaneBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "90", "256" })
+    public int width;
+
+    /** Number of characters in each message. */
+    @Param({ "16", "256" })
+    public int length;
+
+    /** True iff the LaneMachine may use the Vector API. */
+    @Param({ "false", "true" })
+    public boolean vector;
+
+    /** Generate the machines and messages. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchmarkData.alphabet(width);
+        Alphabet alphabet = new Alphabet(chars);
+        _machines = new Machine[MESSAGES];
+        _settings = new int[MESSAGES][];
+        _messages = new int[MESSAGES][];
+        Machine template = BenchmarkData.machine(chars, random);
+        for (int k = 0; k < MESSAGES; k += 1) {
+            _machines[k] = template.copy();
+            _machines[k].insertRotors(ROTORS);
+            _machines[k].setRotors(BenchmarkData.setting(chars, random));
+            _machines[k].setPlugboard(
+                new Permutation(BenchmarkData.plugboard(chars, random),
+                                alphabet));
+            _settings[k] = new int[ROTORS.length - 1];
+            for (int i = 1; i < ROTORS.length; i += 1) {
+                _settings[k][i - 1] = _machines[k].rotor(i).setting();
+            }
+            _messages[k] = new int[length];
+            for (int i = 0; i < length; i += 1) {
+                _messages[k][i] = random.nextInt(width);
+            }
+        }
+        _lanes = vector ? LaneMachine.create(template)
+            : new LaneMachine(template, LaneMachine.DEFAULT_LANES);
+    }
+
+    /** Each message converted by its own Machine. */
+    @Benchmark
+    public int[][] machines() {
+        for (int k = 0; k < MESSAGES; k += 1) {
+            _machines[k].setRotors(_settings[k]);
+            _machines[k].convert(_messages[k], _messages[k], 0, length);
+        }
+        return _messages;
+    }
+
+    /** All the messages converted in lanes. */
+    @Benchmark
+    public int[][] lanes() {
+        for (int k = 0; k < MESSAGES; k += 1) {
+            _lanes.add(_machines[k], _messages[k]);
+        }
+        _lanes.convertAll();
+        return _messages;
+    }
+
+    /** Number of messages converted by each benchmark call. */
+    private static final int MESSAGES = 1024;
+
+    /** The rotors inserted into each machine. */
+    private static final String[] ROTORS = { "B", "BETA", "I", "II", "III" };
+
+    /** Seed for the generated data. */
+    private static final long SEED = 0x454e49474d41L;
+
+    /** The machines, each set up for one message. */
+    private Machine[] _machines;
+
+    /** The initial settings of each machine's rotors. */
+    private int[][] _settings;
+
+    /** The messages, as character indices, converted in place. */
+    private int[][] _messages;
+
+    /** The lanes converting the messages. */
+    private LaneMachine _lanes;
+
+}
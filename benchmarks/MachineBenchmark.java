@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of converting whole messages with a Machine.  Scores are
+ *  in messages per millisecond.
+ *  @author Naman Patel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "90", "256" })
+    public int width;
+
+    /** Number of characters in each message. */
+    @Param({ "16", "1024", "65536" })
+    public int length;
+
+    /** True iff the machine caches conversions by rotor state (see
+     *  Machine.setCompiled). */
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    /** Generate the machine and message. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchmarkData.alphabet(width);
+        _machine = BenchmarkData.machine(chars, random);
+        _machine.setCompiled(compiled);
+        _message = BenchmarkData.message(chars, length, random);
+        _chars = _message.toCharArray();
+        _converted = new char[length];
+    }
+
+    /** Machine.convert on a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Machine.convert on a char array into a preallocated array. */
+    @Benchmark
+    public char[] convertChars() {
+        _machine.convert(_chars, 0, _chars.length, _converted, 0);
+        return _converted;
+    }
+
+    /** Seed for the generated data. */
+    private static final long SEED = 0x454e49474d41L;
+
+    /** A machine with random rotors. */
+    private Machine _machine;
+
+    /** A random message. */
+    private String _message;
+
+    /** The characters of _message. */
+    private char[] _chars;
+
+    /** Destination of converted characters. */
+    private char[] _converted;
+
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of processing generated configuration and input files with
+ *  Main, from reading the configuration to writing the output file.
+ *  Scores are in milliseconds per run.
+ *  @author Naman Patel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+
+    /** Number of characters in the alphabet.  Alphabets are limited to
+     *  printable ASCII so that the files read the same in any default
+     *  charset. */
+    @Param({ "26", "90" })
+    public int width;
+
+    /** Approximate number of message characters in the input. */
+    @Param({ "1000", "100000", "10000000" })
+    public int size;
+
+    /** Options passed to Main, separated by blanks. */
+    @Param({ "", "--compiled", "--parallel" })
+    public String options;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(SEED);
+        String chars = BenchmarkData.alphabet(width);
+        _directory = Files.createTempDirectory("enigma-bench");
+        Path config = _directory.resolve("bench.conf"),
+            input = _directory.resolve("bench.in");
+        Files.writeString(config, BenchmarkData.config(chars, random));
+        StringBuilder text = new StringBuilder();
+        for (int lines = 0; lines * LINE_LENGTH < size; lines += 1) {
+            if (lines % GROUP_LINES == 0) {
+                text.append(BenchmarkData.settings(chars, random))
+                    .append('\n');
+            }
+            text.append(BenchmarkData.message(chars, LINE_LENGTH, random))
+                .append('\n');
+        }
+        Files.writeString(input, text);
+        ArrayList<String> args = new ArrayList<>();
+        for (String option : options.split(" ")) {
+            if (!option.isEmpty()) {
+                args.add(option);
+            }
+        }
+        args.add(config.toString());
+        args.add(input.toString());
+        args.add(_directory.resolve("bench.out").toString());
+        _args = args.toArray(new String[0]);
+    }
+
+    /** Remove the files written by setUp and the benchmark. */
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(_directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+        }
+        Files.delete(_directory);
+    }
+
+    /** Main.main on the generated files. */
+    @Benchmark
+    public void process() {
+        Main.main(_args);
+    }
+
+    /** Number of characters in each message line. */
+    private static final int LINE_LENGTH = 60;
+
+    /** Number of message lines following each settings line. */
+    private static final int GROUP_LINES = 1000;
+
+    /** Seed for the generated data. */
+    private static final long SEED = 0x454e49474d41L;
+
+    /** Directory holding the generated files. */
+    private Path _directory;
+
+    /** Arguments to Main. */
+    private String[] _args;
+
+}